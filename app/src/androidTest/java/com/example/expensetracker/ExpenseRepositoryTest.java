@@ -0,0 +1,251 @@
+package com.example.expensetracker;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ExpenseRepository keeps SQLite off the main thread and
+ * delivers its results back onto it, and times report period switches
+ * as the history grows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExpenseRepositoryTest {
+    private static final String TAG = "ExpenseRepositoryTest";
+    // Every test gets a fresh database file, deleted afterwards; the app's data is never opened
+    private static final String TEST_DATABASE = "expense-repository-test.db";
+    private static final int TEST_USER_ID = 1;
+    // History sizes the period switch benchmark grows through, about 250 rows a day
+    private static final int[] BENCHMARK_HISTORY_SIZES = {10000, 100000, 1000000};
+    private static final int BENCHMARK_ROWS_PER_DAY = 250;
+    private static final int BENCHMARK_FIRST_DAY = 16000;
+    private static final String[] BENCHMARK_CATEGORIES = {"Food & Dining", "Transportation", "Shopping",
+            "Bills & Utilities", "Travel"};
+    // The presets the Reports period spinner switches between
+    private static final int[] BENCHMARK_PERIODS = {ReportPeriod.ALL_TIME, ReportPeriod.THIS_MONTH,
+            ReportPeriod.LAST_30_DAYS, ReportPeriod.YEAR_TO_DATE};
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        databaseHelper = DatabaseHelper.openForTesting(context, TEST_DATABASE);
+        DatabaseHelper.setStrictThreading(true);
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void databaseAccessOnMainThreadThrows() {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    databaseHelper.getSummary(TEST_USER_ID);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void resultsAreDeliveredOnMainThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicBoolean onMainThread = new AtomicBoolean(true);
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final AtomicInteger expenseCount = new AtomicInteger(-1);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final ExpenseRepository repository = new ExpenseRepository(databaseHelper);
+                repository.addExpense(new Expense(0, TEST_USER_ID, -1250, "Food & Dining", "Lunch", "2024-03-01"),
+                        new ExpenseRepository.Callback<Long>() {
+                            @Override
+                            public void onResult(Long id) {
+                                onMainThread.compareAndSet(true, Looper.myLooper() == Looper.getMainLooper());
+                                latch.countDown();
+
+                                repository.getSummary(TEST_USER_ID, new ExpenseRepository.Callback<ExpenseSummary>() {
+                                    @Override
+                                    public void onResult(ExpenseSummary summary) {
+                                        onMainThread.compareAndSet(true, Looper.myLooper() == Looper.getMainLooper());
+                                        expenseCount.set(summary.getExpenseCount());
+                                        latch.countDown();
+                                    }
+
+                                    @Override
+                                    public void onError(Exception e) {
+                                        error.set(e);
+                                        latch.countDown();
+                                    }
+                                });
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                error.set(e);
+                                latch.countDown();
+                                latch.countDown();
+                            }
+                        });
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+        assertTrue(onMainThread.get());
+        assertEquals(1, expenseCount.get());
+    }
+
+    @Test
+    public void closedRepositoryDropsCallbacks() throws Exception {
+        final AtomicBoolean delivered = new AtomicBoolean(false);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ExpenseRepository repository = new ExpenseRepository(databaseHelper);
+                repository.getSummary(TEST_USER_ID, new ExpenseRepository.Callback<ExpenseSummary>() {
+                    @Override
+                    public void onResult(ExpenseSummary summary) {
+                        delivered.set(true);
+                    }
+                });
+                repository.close();
+            }
+        });
+
+        // Give the background pool time to finish anything that did start
+        Thread.sleep(500);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertFalse(delivered.get());
+    }
+
+    @Test
+    public void benchmarkPeriodSwitching() throws Exception {
+        final ExpenseRepository repository = new ExpenseRepository(databaseHelper);
+        int rows = 0;
+        try {
+            for (int size : BENCHMARK_HISTORY_SIZES) {
+                insertBenchmarkRows(rows, size);
+                rows = size;
+                int today = BENCHMARK_FIRST_DAY + (size - 1) / BENCHMARK_ROWS_PER_DAY;
+                // Read outside the timings, only to know how many rows each period covers
+                TransactionSnapshot expected = databaseHelper.loadSnapshot(TEST_USER_ID);
+                assertEquals(size, expected.size());
+
+                // The write made every cached result stale, so the first switch loads the snapshot
+                for (int kind : BENCHMARK_PERIODS) {
+                    final ReportPeriod period = ReportPeriod.of(kind, today);
+                    long start = System.nanoTime();
+                    ReportCharts charts = await(new Request<ReportCharts>() {
+                        @Override
+                        public void start(ExpenseRepository.Callback<ReportCharts> callback) {
+                            repository.getReportCharts(TEST_USER_ID, period.getFromDay(), period.getToDay(), callback);
+                        }
+                    });
+                    long chartsMillis = (System.nanoTime() - start) / 1000000;
+
+                    start = System.nanoTime();
+                    UserTotals totals = await(new Request<UserTotals>() {
+                        @Override
+                        public void start(ExpenseRepository.Callback<UserTotals> callback) {
+                            repository.getUserTotals(TEST_USER_ID, period.getFromDay(), period.getToDay(), callback);
+                        }
+                    });
+                    long totalsMillis = (System.nanoTime() - start) / 1000000;
+
+                    int periodRows = expected.countRows(period.getFromDay(), period.getToDay());
+                    Log.i(TAG, size + " rows, " + ReportPeriod.LABELS[kind] + " (" + periodRows + " rows): " +
+                            "charts " + chartsMillis + " ms, totals " + totalsMillis + " ms");
+                    assertEquals(periodRows, charts.getSummary().getTransactionCount());
+                    assertTrue(totals.matches(charts.getSummary()));
+                }
+            }
+        } finally {
+            repository.close();
+        }
+    }
+
+    // Rows [from, to) of the benchmark history, oldest first
+    private void insertBenchmarkRows(int from, int to) {
+        Expense expense = new Expense();
+        DatabaseHelper.BulkInsert bulkInsert = databaseHelper.beginBulkInsert();
+        try {
+            for (int i = from; i < to; i++) {
+                expense.setId(0);
+                expense.setUserId(TEST_USER_ID);
+                expense.setCategoryId(0);
+                if (i % 20 == 0) {
+                    expense.setAmountCents(250000);
+                    expense.setCategory("Salary");
+                } else {
+                    expense.setAmountCents(-(100 + i % 5000));
+                    expense.setCategory(BENCHMARK_CATEGORIES[i % BENCHMARK_CATEGORIES.length]);
+                }
+                expense.setDescription("Shop " + (i % 997));
+                expense.setDate(EpochDay.toIsoDate(BENCHMARK_FIRST_DAY + i / BENCHMARK_ROWS_PER_DAY));
+                bulkInsert.add(expense);
+            }
+            bulkInsert.commit();
+        } finally {
+            bulkInsert.close();
+        }
+    }
+
+    private interface Request<T> {
+        void start(ExpenseRepository.Callback<T> callback);
+    }
+
+    // Starts a repository call and waits for the result to reach the main thread
+    private static <T> T await(Request<T> request) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<T> result = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        request.start(new ExpenseRepository.Callback<T>() {
+            @Override
+            public void onResult(T value) {
+                result.set(value);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                error.set(e);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.MINUTES));
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return result.get();
+    }
+}
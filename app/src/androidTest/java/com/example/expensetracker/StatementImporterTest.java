@@ -0,0 +1,148 @@
+package com.example.expensetracker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the statement import pipeline against a throwaway database, including a
+ * timed import of a million-line statement.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementImporterTest {
+    private static final String TAG = "StatementImporterTest";
+    // Every test gets a fresh database file, deleted afterwards; the app's data is never opened
+    private static final String TEST_DATABASE = "statement-importer-test.db";
+    private static final int TEST_USER_ID = 1;
+    private static final int BENCHMARK_LINES = 1000000;
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        databaseHelper = DatabaseHelper.openForTesting(context, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.close();
+        context.deleteDatabase(TEST_DATABASE);
+    }
+
+    private StatementImporter.Result importCsv(String csv) throws IOException {
+        return new StatementImporter(false).run(databaseHelper, TEST_USER_ID,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    @Test
+    public void reimportingOverlappingStatementAddsOnlyNewRows() throws IOException {
+        String january = "Date,Description,Amount\n" +
+                "01/02/2024,Coffee,-3.50\n" +
+                "01/02/2024,Coffee,-3.50\n" +
+                "01/05/2024,Salary,2500.00\n" +
+                "pending,Card hold,-20.00\n";
+        StatementImporter.Result first = importCsv(january);
+        assertEquals(3, first.getImported());
+        assertEquals(1, first.getRejected());
+
+        // The second statement repeats January and adds one more coffee on the 2nd
+        String overlapping = "Date,Description,Amount\n" +
+                "01/02/2024,COFFEE,-3.50\n" +
+                "01/02/2024,Coffee,-3.50\n" +
+                "01/02/2024,Coffee,-3.50\n" +
+                "01/05/2024,Salary,2500.00\n" +
+                "02/01/2024,Rent,-900.00\n";
+        StatementImporter.Result second = importCsv(overlapping);
+        assertEquals(3, second.getDuplicates());
+        assertEquals(2, second.getImported());
+
+        UserTotals totals = databaseHelper.getUserTotals(TEST_USER_ID);
+        assertEquals(5, totals.getTransactionCount());
+        assertEquals(350 * 3 + 90000, totals.getTotalExpenseCents());
+    }
+
+    @Test
+    public void unknownBankCategoriesAreFiledUnderOther() throws IOException {
+        int categoryCount = databaseHelper.getCategories().size();
+        String statement = "Date,Description,Amount,Category\n" +
+                "03/01/2024,Lunch,-12.00,Food & Dining\n" +
+                "03/02/2024,Hardware store,-40.00,MERCHANDISE/RETAIL\n";
+        assertEquals(2, importCsv(statement).getImported());
+
+        // The bank's own label adds nothing to the categories every user picks from
+        assertEquals(categoryCount, databaseHelper.getCategories().size());
+        List<Expense> rows = databaseHelper.getExpensesPage(TEST_USER_ID, DatabaseHelper.FIRST_PAGE_DAY,
+                DatabaseHelper.FIRST_PAGE_ID, 10);
+        assertEquals("Other", rows.get(0).getCategory());
+        assertEquals("Food & Dining", rows.get(1).getCategory());
+    }
+
+    @Test
+    public void unreadableStatementIsStillClosed() {
+        // A gzip magic number followed by a broken header fails before any reader owns the stream
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[]{0x1f, (byte) 0x8b, 0, 0}) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        try {
+            new StatementImporter(false).run(databaseHelper, TEST_USER_ID, in, null);
+            fail("Expected the broken gzip header to be rejected");
+        } catch (IOException expected) {
+            assertTrue(closed[0]);
+        }
+    }
+
+    @Test
+    public void benchmarkMillionLineStatement() throws IOException {
+        File file = new File(context.getCacheDir(), "benchmark-statement.csv");
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("Date,Description,Amount,Balance\n");
+            for (int i = 0; i < BENCHMARK_LINES; i++) {
+                // About 250 transactions a day, a decade of history
+                writer.write(EpochDay.toIsoDate(16000 + i / 250) + ",\"Shop " + (i % 997) + "\"," +
+                        (i % 2 == 0 ? "-" : "") + (1 + i % 5000) + "." + (10 + i % 90) + ",0.00\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        try {
+            StatementImporter.Result result = new StatementImporter(false).run(databaseHelper, TEST_USER_ID,
+                    new FileInputStream(file), null);
+            Log.i(TAG, "Imported " + result.getImported() + " rows in " + result.getElapsedMillis() + " ms, " +
+                    result.getRowsPerSecond() + " rows/s");
+            assertEquals(BENCHMARK_LINES, result.getRowsRead());
+            assertEquals(BENCHMARK_LINES, result.getImported());
+            assertEquals(BENCHMARK_LINES, databaseHelper.getExpenseCount(TEST_USER_ID));
+        } finally {
+            file.delete();
+        }
+    }
+}
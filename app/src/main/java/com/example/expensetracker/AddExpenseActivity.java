@@ -13,7 +13,9 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class AddExpenseActivity extends AppCompatActivity {
@@ -23,29 +25,12 @@ public class AddExpenseActivity extends AppCompatActivity {
     private RadioButton radioIncome, radioExpense;
     private Button buttonSave, buttonCancel;
     private ImageButton buttonBack;
-    private DatabaseHelper databaseHelper;
+    private ExpenseRepository expenseRepository;
     private int currentUserId;
 
-    // Categories
-    private String[] expenseCategories = {
-            "Food & Dining",
-            "Transportation",
-            "Shopping",
-            "Entertainment",
-            "Bills & Utilities",
-            "Healthcare",
-            "Education",
-            "Travel",
-            "Other"
-    };
-
-    private String[] incomeCategories = {
-            "Salary",
-            "Business",
-            "Investment",
-            "Gift",
-            "Other"
-    };
+    // Categories, loaded from the database
+    private final List<Category> expenseCategories = new ArrayList<>();
+    private final List<Category> incomeCategories = new ArrayList<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,8 +40,8 @@ public class AddExpenseActivity extends AppCompatActivity {
         // Get User ID from Intent
         currentUserId = getIntent().getIntExtra("USER_ID", 1);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs off the main thread through the repository
+        expenseRepository = new ExpenseRepository(this);
 
         // Initialize Views
         initializeViews();
@@ -64,8 +49,8 @@ public class AddExpenseActivity extends AppCompatActivity {
         // Set current date
         setCurrentDate();
 
-        // Setup category spinner with default expense categories
-        setupCategorySpinner(expenseCategories);
+        // Load categories into the spinner
+        loadCategories();
 
         // Setup listeners
         setupListeners();
@@ -85,12 +70,31 @@ public class AddExpenseActivity extends AppCompatActivity {
     }
 
     private void setCurrentDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        // Stored dates are ISO yyyy-MM-dd; a locale with other digits would make them unparseable
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
         editTextDate.setText(sdf.format(new Date()));
     }
 
-    private void setupCategorySpinner(String[] categories) {
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(
+    private void loadCategories() {
+        expenseRepository.getCategories(new ExpenseRepository.Callback<List<Category>>() {
+            @Override
+            public void onResult(List<Category> categories) {
+                expenseCategories.clear();
+                incomeCategories.clear();
+                for (Category category : categories) {
+                    if (category.isIncome()) {
+                        incomeCategories.add(category);
+                    } else {
+                        expenseCategories.add(category);
+                    }
+                }
+                setupCategorySpinner(radioIncome.isChecked() ? incomeCategories : expenseCategories);
+            }
+        });
+    }
+
+    private void setupCategorySpinner(List<Category> categories) {
+        ArrayAdapter<Category> adapter = new ArrayAdapter<>(
                 this,
                 android.R.layout.simple_spinner_item,
                 categories
@@ -142,10 +146,16 @@ public class AddExpenseActivity extends AppCompatActivity {
         String amountStr = editTextAmount.getText().toString().trim();
         String description = editTextDescription.getText().toString().trim();
         String date = editTextDate.getText().toString().trim();
-        String category = spinnerCategory.getSelectedItem().toString();
+        Category category = (Category) spinnerCategory.getSelectedItem();
         boolean isIncome = radioIncome.isChecked();
 
         // Validate inputs
+        if (category == null) {
+            // Categories are still loading
+            Toast.makeText(this, "Please select a category", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         if (amountStr.isEmpty()) {
             editTextAmount.setError("Please enter amount");
             editTextAmount.requestFocus();
@@ -164,37 +174,67 @@ public class AddExpenseActivity extends AppCompatActivity {
             return;
         }
 
+        // Rows are indexed and reported by day, so the date must be a real yyyy-MM-dd date
+        if (EpochDay.fromIsoDate(date) == EpochDay.UNKNOWN) {
+            editTextDate.setError("Please enter a valid date (yyyy-MM-dd)");
+            editTextDate.requestFocus();
+            return;
+        }
+
         try {
-            double amount = Double.parseDouble(amountStr);
+            // Parse straight to cents so "0.1" is stored exactly
+            long amountCents = Money.parseCents(amountStr);
 
             // Make amount negative for expenses, positive for income
             if (!isIncome) {
-                amount = -Math.abs(amount);
+                amountCents = -Math.abs(amountCents);
             } else {
-                amount = Math.abs(amount);
+                amountCents = Math.abs(amountCents);
             }
 
             // Create Expense object
             Expense expense = new Expense();
             expense.setUserId(currentUserId);
-            expense.setAmount(amount);
-            expense.setCategory(category);
+            expense.setAmountCents(amountCents);
+            expense.setCategoryId(category.getId());
+            expense.setCategory(category.getName());
             expense.setDescription(description);
             expense.setDate(date);
 
-            // Save to database
-            long result = databaseHelper.addExpense(expense);
+            // Save to database; disable Save so a double tap cannot insert twice
+            buttonSave.setEnabled(false);
+            expenseRepository.addExpense(expense, new ExpenseRepository.Callback<Long>() {
+                @Override
+                public void onResult(Long result) {
+                    if (result > 0) {
+                        Toast.makeText(AddExpenseActivity.this, "Transaction saved successfully!", Toast.LENGTH_SHORT).show();
+                        finish(); // Return to dashboard
+                    } else {
+                        onSaveFailed();
+                    }
+                }
 
-            if (result > 0) {
-                Toast.makeText(this, "Transaction saved successfully!", Toast.LENGTH_SHORT).show();
-                finish(); // Return to dashboard
-            } else {
-                Toast.makeText(this, "Failed to save transaction", Toast.LENGTH_SHORT).show();
-            }
+                @Override
+                public void onError(Exception e) {
+                    onSaveFailed();
+                }
+            });
 
         } catch (NumberFormatException e) {
             editTextAmount.setError("Invalid amount");
             editTextAmount.requestFocus();
         }
     }
+
+    private void onSaveFailed() {
+        buttonSave.setEnabled(true);
+        Toast.makeText(this, "Failed to save transaction", Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Drop any database work still queued for this screen
+        expenseRepository.close();
+    }
 }
\ No newline at end of file
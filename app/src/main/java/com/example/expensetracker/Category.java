@@ -0,0 +1,39 @@
+package com.example.expensetracker;
+
+public class Category {
+    // Stored in categories.kind; the same name may exist once per kind (e.g. "Other")
+    public static final int KIND_EXPENSE = 0;
+    public static final int KIND_INCOME = 1;
+
+    private final int id;
+    private final String name;
+    private final int kind;
+
+    public Category(int id, String name, int kind) {
+        this.id = id;
+        this.name = name;
+        this.kind = kind;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public boolean isIncome() {
+        return kind == KIND_INCOME;
+    }
+
+    // Shown directly by ArrayAdapter in the category spinner
+    @Override
+    public String toString() {
+        return name;
+    }
+}
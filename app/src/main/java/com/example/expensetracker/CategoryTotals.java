@@ -0,0 +1,73 @@
+package com.example.expensetracker;
+
+import java.util.Arrays;
+
+// Category names with their totals in cents, kept in parallel arrays so sums never box.
+// Categories keep the order they were added in; the summary query adds them largest first.
+public class CategoryTotals {
+    private String[] names = new String[8];
+    private long[] totalsCents = new long[8];
+    private int size;
+
+    // Adds to an existing category or appends a new one
+    void add(String name, long cents) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                totalsCents[i] += cents;
+                return;
+            }
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            totalsCents = Arrays.copyOf(totalsCents, size * 2);
+        }
+        names[size] = name;
+        totalsCents[size] = cents;
+        size++;
+    }
+
+    // At most maxEntries categories: the largest, each at least minFraction of the total,
+    // with the long tail summed into otherName (merged with any existing category of that
+    // name). Expects categories largest first, as the summaries add them.
+    public CategoryTotals collapseTail(int maxEntries, double minFraction, String otherName) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += totalsCents[i];
+        }
+
+        // Folding a single category into "Other" would only rename it
+        int limit = size <= maxEntries ? size : maxEntries - 1;
+        CategoryTotals collapsed = new CategoryTotals();
+        long otherCents = 0;
+        for (int i = 0; i < size; i++) {
+            boolean keep = collapsed.size < limit
+                    && totalsCents[i] >= minFraction * total
+                    && !names[i].equals(otherName);
+            if (keep) {
+                collapsed.add(names[i], totalsCents[i]);
+            } else {
+                otherCents += totalsCents[i];
+            }
+        }
+        if (otherCents > 0) {
+            collapsed.add(otherName, otherCents);
+        }
+        return collapsed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public long getTotalCents(int index) {
+        return totalsCents[index];
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.expensetracker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Reads transactions from a bank's CSV export, or this app's. The header row names the columns
+// and the usual names for date, amount, debit and credit, description and category are
+// recognised; lines above it, such as account details, are skipped. Fields follow RFC 4180,
+// quoted line breaks included, separated by whichever of ',', ';' or tab the header uses.
+final class CsvStatementReader implements StatementReader {
+    // How far down the file the header row may be
+    private static final int MAX_HEADER_LINE = 20;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder field = new StringBuilder();
+    private String[] fields = new String[16];
+    private int fieldCount;
+    // 0 until the header line settles it
+    private char delimiter;
+
+    private int dateColumn = -1;
+    private int amountColumn = -1;
+    private int debitColumn = -1;
+    private int creditColumn = -1;
+    private int descriptionColumn = -1;
+    private int categoryColumn = -1;
+
+    CsvStatementReader(Reader reader) throws IOException {
+        this.reader = reader;
+        for (int line = 0; line < MAX_HEADER_LINE; line++) {
+            delimiter = 0;
+            if (!readRecord()) {
+                break;
+            }
+            if (findColumns()) {
+                if (delimiter == 0) {
+                    delimiter = ',';
+                }
+                return;
+            }
+        }
+        throw new IOException("No header row with a date and an amount column");
+    }
+
+    @Override
+    public boolean next(StatementRecord record) throws IOException {
+        while (readRecord()) {
+            // Blank lines, often at the end of the file
+            if (fieldCount == 1 && fields[0].trim().isEmpty()) {
+                continue;
+            }
+            record.clear();
+            record.date = column(dateColumn);
+            record.amount = column(amountColumn);
+            record.debit = column(debitColumn);
+            record.credit = column(creditColumn);
+            record.description = column(descriptionColumn);
+            record.category = column(categoryColumn);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean findColumns() {
+        dateColumn = amountColumn = debitColumn = creditColumn = descriptionColumn = categoryColumn = -1;
+        for (int i = 0; i < fieldCount; i++) {
+            String name = fields[i].trim().toLowerCase(Locale.US);
+            if (dateColumn < 0 && name.contains("date")) {
+                dateColumn = i;
+            } else if (debitColumn < 0 && (name.contains("debit") || name.contains("withdrawal")
+                    || name.contains("money out") || name.contains("paid out"))) {
+                debitColumn = i;
+            } else if (creditColumn < 0 && (name.contains("credit") || name.contains("deposit")
+                    || name.contains("money in") || name.contains("paid in"))) {
+                creditColumn = i;
+            } else if (amountColumn < 0 && name.contains("amount")) {
+                amountColumn = i;
+            } else if (descriptionColumn < 0 && (name.contains("description") || name.contains("payee")
+                    || name.contains("memo") || name.contains("details") || name.contains("narrative")
+                    || name.equals("name"))) {
+                descriptionColumn = i;
+            } else if (categoryColumn < 0 && name.contains("category")) {
+                categoryColumn = i;
+            }
+        }
+        return dateColumn >= 0 && (amountColumn >= 0 || debitColumn >= 0 || creditColumn >= 0);
+    }
+
+    private String column(int index) {
+        return index >= 0 && index < fieldCount ? fields[index] : null;
+    }
+
+    // Splits the next record into fields; false at the end of the input
+    private boolean readRecord() throws IOException {
+        fieldCount = 0;
+        field.setLength(0);
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // Unterminated quote; keep what was read
+                    break;
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next != '"') {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (delimiter == 0 ? c == ',' || c == ';' || c == '\t' : c == delimiter) {
+                delimiter = (char) c;
+                endField();
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        endField();
+        return true;
+    }
+
+    private void endField() {
+        if (fieldCount == fields.length) {
+            fields = Arrays.copyOf(fields, fieldCount * 2);
+        }
+        fields[fieldCount++] = field.toString();
+        field.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
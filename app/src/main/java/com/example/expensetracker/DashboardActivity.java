@@ -5,22 +5,26 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.ImageButton;
+import android.widget.Spinner;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
 
-import com.example.expensetracker.DatabaseHelper;
-import com.example.expensetracker.Expense;
-
 import java.text.NumberFormat;
-import java.util.List;
 import java.util.Locale;
 
 public class DashboardActivity extends AppCompatActivity {
-    private TextView textViewTotalBalance, textViewTotalIncome, textViewTotalExpense;
+    private TextView textViewTotalBalance, textViewTotalIncome, textViewTotalExpense, textViewBalanceLabel;
     private CardView cardViewAddExpense, cardViewExpenseList, cardViewReports, cardViewSettings;
     private ImageButton buttonLogout;
-    private DatabaseHelper databaseHelper;
+    private PeriodSelector periodSelector;
+    // Bumped on every load so totals for a previously selected period are ignored
+    private int totalsGeneration;
+    private ExpenseRepository expenseRepository;
     private int currentUserId;
+    private static boolean totalsVerified;
+    // Set when a write lands while another screen is in front; the totals reload on return
+    private boolean resumed;
+    private boolean totalsStale;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -30,23 +34,40 @@ public class DashboardActivity extends AppCompatActivity {
         // Get User ID from Intent, default to 1 if not provided
         currentUserId = getIntent().getIntExtra("USER_ID", 1);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs off the main thread through the repository
+        expenseRepository = new ExpenseRepository(this);
 
         // Initialize Views
         initializeViews();
 
         // Load Dashboard Data
         loadDashboardData();
+        verifySummaryTables();
 
         // Setup Click Listeners
         setupClickListeners();
+
+        // Refresh only after writes that move the totals, instead of on every return
+        expenseRepository.addChangeListener(currentUserId, new ExpenseChangeBus.Listener() {
+            @Override
+            public void onExpensesChanged(ExpenseChange change) {
+                if (!change.hasRowChanges() || !periodSelector.getPeriod().isAffectedBy(change)) {
+                    return;
+                }
+                if (resumed) {
+                    loadDashboardData();
+                } else {
+                    totalsStale = true;
+                }
+            }
+        });
     }
 
     private void initializeViews() {
         textViewTotalBalance = findViewById(R.id.text_view_total_balance);
         textViewTotalIncome = findViewById(R.id.text_view_total_income);
         textViewTotalExpense = findViewById(R.id.text_view_total_expense);
+        textViewBalanceLabel = findViewById(R.id.text_view_balance_label);
 
         cardViewAddExpense = findViewById(R.id.card_view_add_expense);
         cardViewExpenseList = findViewById(R.id.card_view_expense_list);
@@ -54,46 +75,51 @@ public class DashboardActivity extends AppCompatActivity {
         cardViewSettings = findViewById(R.id.card_view_settings);
 
         buttonLogout = findViewById(R.id.button_logout);
+
+        periodSelector = new PeriodSelector(this, (Spinner) findViewById(R.id.spinner_period),
+                new PeriodSelector.Listener() {
+                    @Override
+                    public void onPeriodSelected(ReportPeriod period) {
+                        loadDashboardData();
+                    }
+                });
     }
 
     private void loadDashboardData() {
-        // Fetch expenses for current user
-        List<Expense> expenses = databaseHelper.getAllExpenses(currentUserId);
+        // All-time totals are kept up to date by database triggers, so they read a single row;
+        // other periods add up monthly rollups plus the rows of any partial month
+        final int generation = ++totalsGeneration;
+        final ReportPeriod period = periodSelector.getPeriod();
+        expenseRepository.getUserTotals(currentUserId, period.getFromDay(), period.getToDay(),
+                new ExpenseRepository.Callback<UserTotals>() {
+                    @Override
+                    public void onResult(UserTotals totals) {
+                        if (generation == totalsGeneration) {
+                            textViewBalanceLabel.setText(period.isAllTime() ? "Total Balance" : "Net Balance");
+                            showTotals(totals);
+                        }
+                    }
+                });
+    }
 
-        // Calculate totals
-        double totalExpense = calculateTotalExpense(expenses);
-        double totalIncome = calculateTotalIncome(expenses);
-        double totalBalance = totalIncome - totalExpense;
+    private void verifySummaryTables() {
+        // Once per process, check the stored totals and rollups against the raw rows in the
+        // background if a migration or failed bulk write asked for it; usually this reads one
+        // flag. A rebuild is published as a change, which reloads the totals.
+        if (!totalsVerified) {
+            totalsVerified = true;
+            expenseRepository.verifySummaryTablesIfRequested(null);
+        }
+    }
 
+    private void showTotals(UserTotals totals) {
         // Format currency
         NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.getDefault());
 
         // Set TextViews
-        textViewTotalBalance.setText(currencyFormat.format(totalBalance));
-        textViewTotalIncome.setText(currencyFormat.format(totalIncome));
-        textViewTotalExpense.setText(currencyFormat.format(totalExpense));
-    }
-
-    private double calculateTotalExpense(List<Expense> expenses) {
-        double total = 0;
-        for (Expense expense : expenses) {
-            // Assuming negative amounts are expenses
-            if (expense.getAmount() < 0) {
-                total += Math.abs(expense.getAmount());
-            }
-        }
-        return total;
-    }
-
-    private double calculateTotalIncome(List<Expense> expenses) {
-        double total = 0;
-        for (Expense expense : expenses) {
-            // Assuming positive amounts are income
-            if (expense.getAmount() > 0) {
-                total += expense.getAmount();
-            }
-        }
-        return total;
+        textViewTotalBalance.setText(currencyFormat.format(Money.toUnits(totals.getBalanceCents())));
+        textViewTotalIncome.setText(currencyFormat.format(Money.toUnits(totals.getTotalIncomeCents())));
+        textViewTotalExpense.setText(currencyFormat.format(Money.toUnits(totals.getTotalExpenseCents())));
     }
 
     private void setupClickListeners() {
@@ -141,7 +167,24 @@ public class DashboardActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Reload dashboard data when returning to this activity
-        loadDashboardData();
+        resumed = true;
+        // Reload only if something was written while this screen was hidden
+        if (totalsStale) {
+            totalsStale = false;
+            loadDashboardData();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Drop any database work still queued for this screen
+        expenseRepository.close();
     }
 }
\ No newline at end of file
@@ -2,51 +2,657 @@ package com.example.expensetracker;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Looper;
 
+import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     // Database Info
     private static final String DATABASE_NAME = "ExpenseTracker.db";
-    private static final int DATABASE_VERSION = 1;
+    // Bump together with a new case in applyMigration(); never edit a shipped migration
+    private static final int DATABASE_VERSION = 9;
 
     // Table Names
     private static final String TABLE_EXPENSES = "expenses";
+    private static final String TABLE_USER_TOTALS = "user_totals";
+    private static final String TABLE_MONTHLY_ROLLUPS = "monthly_rollups";
+    private static final String TABLE_CATEGORIES = "categories";
+    // Full-text index over description and category name; docid is the expense id
+    private static final String TABLE_EXPENSES_FTS = "expenses_fts";
+    // One row: whether the summary tables should be checked against the expenses
+    private static final String TABLE_SUMMARY_CHECK = "summary_check";
 
     // Expenses Table Columns
     private static final String KEY_ID = "id";
     private static final String KEY_USER_ID = "user_id";
-    private static final String KEY_AMOUNT = "amount";
-    private static final String KEY_CATEGORY = "category";
+    // Signed amount in cents: positive is income, negative is an expense
+    private static final String KEY_AMOUNT = "amount_cents";
+    private static final String KEY_CATEGORY_ID = "category_id";
     private static final String KEY_DESCRIPTION = "description";
     private static final String KEY_DATE = "date";
+    private static final String KEY_EPOCH_DAY = "epoch_day";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // User Totals Table Columns (kept in step with expenses by triggers)
+    private static final String KEY_INCOME = "income_cents";
+    private static final String KEY_EXPENSE = "expense_cents";
+    private static final String KEY_INCOME_COUNT = "income_count";
+    private static final String KEY_EXPENSE_COUNT = "expense_count";
+
+    // Categories Table Columns (id, name and kind; the same name may exist once per kind)
+    private static final String KEY_NAME = "name";
+    private static final String KEY_KIND = "kind";
+    // Alias of the joined category name in EXPENSES_WITH_CATEGORY queries
+    private static final String KEY_CATEGORY_NAME = "category_name";
+    // Used when an expense arrives with no category
+    private static final String DEFAULT_CATEGORY = "Other";
+
+    // Summary Check Table Column
+    private static final String KEY_PENDING = "pending";
+
+    // Monthly Rollups Table Columns (one row per user, month, category and sign)
+    private static final String KEY_MONTH = "month";
+    private static final String KEY_IS_INCOME = "is_income";
+    private static final String KEY_TOTAL = "total_cents";
+    private static final String KEY_COUNT = "count";
+
+    // yyyyMM month key of an epoch_day column, matching EpochDay.toMonthKey()
+    private static final String MONTH_OF_EPOCH_DAY =
+            "(CASE WHEN " + KEY_EPOCH_DAY + " = " + EpochDay.UNKNOWN + " THEN " + EpochDay.UNKNOWN_MONTH +
+            " ELSE CAST(strftime('%Y%m', " + KEY_EPOCH_DAY + " * 86400, 'unixepoch') AS INTEGER) END)";
+
+    // Indexes
+    private static final String INDEX_EXPENSES_USER_DAY = "idx_expenses_user_day";
+    private static final String INDEX_EXPENSES_USER_AMOUNT = "idx_expenses_user_amount";
+
+    // Expenses aliased as e with their category as c. CROSS JOIN keeps expenses as the outer
+    // loop so its indexes drive the query; the category is a primary key lookup per row.
+    private static final String EXPENSES_WITH_CATEGORY = TABLE_EXPENSES + " e CROSS JOIN " +
+            TABLE_CATEGORIES + " c ON c." + KEY_ID + " = e." + KEY_CATEGORY_ID;
+
+    // Projection of EXPENSES_WITH_CATEGORY read back by readPage()
+    private static final String PAGE_COLUMNS = "e." + KEY_ID + ", e." + KEY_USER_ID + ", e." + KEY_AMOUNT + ", " +
+            "e." + KEY_CATEGORY_ID + ", c." + KEY_NAME + ", e." + KEY_DESCRIPTION + ", " +
+            "e." + KEY_DATE + ", e." + KEY_EPOCH_DAY;
+
+    // How many rows a bulk operation processes between progress callbacks
+    private static final int PROGRESS_INTERVAL = 500;
+
+    // Stay well below SQLite's 999 bound-parameter limit per statement
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    // Rows forEachExpense() reads per query; small enough that a chunk fits one CursorWindow
+    private static final int ITERATE_CHUNK_SIZE = 1000;
+
+    // Keyset values that sort before every stored row; pass them to load the first page
+    public static final int FIRST_PAGE_DAY = Integer.MAX_VALUE;
+    public static final int FIRST_PAGE_ID = Integer.MAX_VALUE;
+
+    private static DatabaseHelper instance;
+
+    // When set, opening the database from the main thread throws instead of risking jank/ANRs
+    private static volatile boolean strictThreading;
+
+    // Versions count up across every helper in the process, so a result cached from one
+    // database is never taken as current for another
+    private static final AtomicLong WRITE_VERSIONS = new AtomicLong();
+
+    // Bumped after every write; cached query results read at an older version are stale
+    private final AtomicLong writeVersion = WRITE_VERSIONS;
+    // Committed writes are described here so open screens can refresh just what changed
+    private final ExpenseChangeBus changeBus = new ExpenseChangeBus();
+
+    // Day bounds that cover every stored row in forEachExpense()
+    public static final int ALL_DAYS_FROM = Integer.MIN_VALUE;
+    public static final int ALL_DAYS_TO = Integer.MAX_VALUE;
+
+    // forEachExpense() flags
+    public static final int ITERATE_REUSE_ROW = 1;
+    public static final int ITERATE_SKIP_DESCRIPTION = 1 << 1;
+
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    public interface ExpenseConsumer {
+        // Return false to stop iterating early
+        boolean accept(Expense expense);
+    }
+
+    // One helper per process: the connection stays open for the app's lifetime instead
+    // of being reopened (and the schema re-read) by every activity and every call
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext(), DATABASE_NAME);
+        }
+        return instance;
+    }
+
+    // A helper of its own on a throwaway database file, or in memory when name is null, so
+    // instrumented tests never touch the app's data
+    static DatabaseHelper openForTesting(Context context, String name) {
+        return new DatabaseHelper(context.getApplicationContext(), name);
+    }
+
+    private DatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // Write-ahead logging lets readers run while a write is in progress
+        setWriteAheadLoggingEnabled(true);
+        // Debug builds fail fast if a screen bypasses ExpenseRepository
+        strictThreading = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        // Results cached so far were read from another database
+        writeVersion.incrementAndGet();
+    }
+
+    static void setStrictThreading(boolean enabled) {
+        strictThreading = enabled;
+    }
+
+    // Read this before running a query whose result will be cached, and store it with the result
+    public long getWriteVersion() {
+        return writeVersion.get();
+    }
+
+    public ExpenseChangeBus getChangeBus() {
+        return changeBus;
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        checkNotMainThread();
+        return super.getWritableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        checkNotMainThread();
+        return super.getReadableDatabase();
+    }
+
+    private static void checkNotMainThread() {
+        if (strictThreading && Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("Database accessed on the main thread; use ExpenseRepository");
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // Always start from the version 1 schema so fresh installs and upgrades
+        // run exactly the same migration steps
         String CREATE_EXPENSES_TABLE = "CREATE TABLE " + TABLE_EXPENSES +
                 "(" +
                 KEY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
                 KEY_USER_ID + " INTEGER," +
-                KEY_AMOUNT + " REAL," +
-                KEY_CATEGORY + " TEXT," +
+                "amount REAL," +
+                "category TEXT," +
                 KEY_DESCRIPTION + " TEXT," +
                 KEY_DATE + " TEXT" +
                 ")";
         db.execSQL(CREATE_EXPENSES_TABLE);
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EXPENSES);
-        onCreate(db);
+        // SQLiteOpenHelper already wraps this in a transaction, so a failed step rolls back
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            applyMigration(db, version);
+        }
+        // Migrations rebuild the summary tables and their triggers, so check them once afterwards
+        requestSummaryCheck(db);
+    }
+
+    private void applyMigration(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // Integer day column so date ordering and ranges can use an index. Unparseable
+                // dates got 0 here; version 8 re-derives every day in Java and moves them off it.
+                db.execSQL("ALTER TABLE " + TABLE_EXPENSES + " ADD COLUMN " +
+                        KEY_EPOCH_DAY + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_EXPENSES + " SET " + KEY_EPOCH_DAY +
+                        " = COALESCE(CAST(julianday(" + KEY_DATE + ") - 2440587.5 AS INTEGER), 0)");
+                db.execSQL("CREATE INDEX " + INDEX_EXPENSES_USER_DAY + " ON " + TABLE_EXPENSES +
+                        "(" + KEY_USER_ID + ", " + KEY_EPOCH_DAY + " DESC, " + KEY_ID + " DESC)");
+                break;
+            case 3:
+                migrateToUserTotals(db);
+                break;
+            case 4:
+                migrateToMonthlyRollups(db);
+                break;
+            case 5:
+                migrateToIntegerCents(db);
+                break;
+            case 6:
+                migrateToCategoryIds(db);
+                break;
+            case 7:
+                migrateToFullTextSearch(db);
+                break;
+            case 8:
+                migrateUnknownEpochDay(db);
+                break;
+            case 9:
+                migrateToSummaryCheck(db);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    // Migration SQL below is written out literally so later column changes cannot alter it
+
+    // Version 3: per-user running totals maintained by triggers, so the dashboard reads one row
+    private void migrateToUserTotals(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE user_totals (" +
+                "user_id INTEGER PRIMARY KEY, " +
+                "income REAL NOT NULL DEFAULT 0, " +
+                "expense REAL NOT NULL DEFAULT 0, " +
+                "income_count INTEGER NOT NULL DEFAULT 0, " +
+                "expense_count INTEGER NOT NULL DEFAULT 0)");
+
+        // Positive amounts are income; everything else counts as an expense of ABS(amount)
+        String addNew = "INSERT OR IGNORE INTO user_totals (user_id) VALUES (NEW.user_id); " +
+                "UPDATE user_totals SET " +
+                "income = income + (CASE WHEN NEW.amount > 0 THEN NEW.amount ELSE 0 END), " +
+                "expense = expense + (CASE WHEN NEW.amount > 0 THEN 0 ELSE -NEW.amount END), " +
+                "income_count = income_count + (NEW.amount > 0), " +
+                "expense_count = expense_count + (NEW.amount <= 0) " +
+                "WHERE user_id = NEW.user_id; ";
+        String removeOld = "UPDATE user_totals SET " +
+                "income = income - (CASE WHEN OLD.amount > 0 THEN OLD.amount ELSE 0 END), " +
+                "expense = expense - (CASE WHEN OLD.amount > 0 THEN 0 ELSE -OLD.amount END), " +
+                "income_count = income_count - (OLD.amount > 0), " +
+                "expense_count = expense_count - (OLD.amount <= 0) " +
+                "WHERE user_id = OLD.user_id; ";
+
+        db.execSQL("CREATE TRIGGER trg_user_totals_insert AFTER INSERT ON expenses BEGIN " +
+                addNew + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_delete AFTER DELETE ON expenses BEGIN " +
+                removeOld + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_update AFTER UPDATE OF user_id, amount ON expenses BEGIN " +
+                removeOld + addNew + "END");
+
+        db.execSQL("INSERT INTO user_totals (user_id, income, expense, income_count, expense_count) " +
+                "SELECT user_id, " +
+                "SUM(CASE WHEN amount > 0 THEN amount ELSE 0 END), " +
+                "SUM(CASE WHEN amount > 0 THEN 0 ELSE -amount END), " +
+                "SUM(amount > 0), SUM(amount <= 0) " +
+                "FROM expenses GROUP BY user_id");
+    }
+
+    // Version 4: sums and counts per (user, month, category, sign) maintained by triggers,
+    // plus a (user_id, amount) index so the largest income/expense is a single index probe
+    private void migrateToMonthlyRollups(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE monthly_rollups (" +
+                "user_id INTEGER NOT NULL, " +
+                "month INTEGER NOT NULL, " +
+                "category TEXT NOT NULL, " +
+                "is_income INTEGER NOT NULL, " +
+                "total REAL NOT NULL DEFAULT 0, " +
+                "count INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (user_id, month, category, is_income)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX idx_expenses_user_amount ON expenses (user_id, amount)");
+
+        String newKey = "user_id = NEW.user_id" +
+                " AND month = CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category = IFNULL(NEW.category, '')" +
+                " AND is_income = (NEW.amount > 0)";
+        String oldKey = "user_id = OLD.user_id" +
+                " AND month = CAST(strftime('%Y%m', OLD.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category = IFNULL(OLD.category, '')" +
+                " AND is_income = (OLD.amount > 0)";
+        String addNew = "INSERT OR IGNORE INTO monthly_rollups (user_id, month, category, is_income) VALUES (" +
+                "NEW.user_id, CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER), " +
+                "IFNULL(NEW.category, ''), NEW.amount > 0); " +
+                "UPDATE monthly_rollups SET total = total + ABS(NEW.amount), count = count + 1 WHERE " +
+                newKey + "; ";
+        String removeOld = "UPDATE monthly_rollups SET total = total - ABS(OLD.amount), count = count - 1 WHERE " +
+                oldKey + "; " +
+                "DELETE FROM monthly_rollups WHERE " + oldKey + " AND count = 0; ";
+
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_insert AFTER INSERT ON expenses BEGIN " +
+                addNew + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_delete AFTER DELETE ON expenses BEGIN " +
+                removeOld + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_update " +
+                "AFTER UPDATE OF user_id, amount, category, epoch_day ON expenses BEGIN " +
+                removeOld + addNew + "END");
+
+        db.execSQL("INSERT INTO monthly_rollups (user_id, month, category, is_income, total, count) " +
+                "SELECT user_id, CAST(strftime('%Y%m', epoch_day * 86400, 'unixepoch') AS INTEGER) AS m, " +
+                "IFNULL(category, '') AS c, amount > 0 AS i, SUM(ABS(amount)), COUNT(*) " +
+                "FROM expenses GROUP BY user_id, m, c, i");
+    }
+
+    // Version 5: amounts become exact integer cents. SQLite cannot change a column's type,
+    // so expenses is rebuilt, and the derived tables are recreated with INTEGER sums.
+    private void migrateToIntegerCents(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE expenses_new (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "user_id INTEGER, " +
+                "amount_cents INTEGER NOT NULL DEFAULT 0, " +
+                "category TEXT, " +
+                "description TEXT, " +
+                "date TEXT, " +
+                "epoch_day INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("INSERT INTO expenses_new (id, user_id, amount_cents, category, description, date, epoch_day) " +
+                "SELECT id, user_id, CAST(ROUND(IFNULL(amount, 0) * 100) AS INTEGER), " +
+                "category, description, date, epoch_day FROM expenses");
+        // Carry the AUTOINCREMENT high-water mark over so deleted ids are never reused
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, " +
+                "IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'expenses'), 0)) " +
+                "WHERE name = 'expenses_new'");
+        // Dropping the old table also drops its indexes and triggers
+        db.execSQL("DROP TABLE expenses");
+        db.execSQL("ALTER TABLE expenses_new RENAME TO expenses");
+        db.execSQL("CREATE INDEX idx_expenses_user_day ON expenses (user_id, epoch_day DESC, id DESC)");
+        db.execSQL("CREATE INDEX idx_expenses_user_amount ON expenses (user_id, amount_cents)");
+
+        db.execSQL("DROP TABLE user_totals");
+        db.execSQL("CREATE TABLE user_totals (" +
+                "user_id INTEGER PRIMARY KEY, " +
+                "income_cents INTEGER NOT NULL DEFAULT 0, " +
+                "expense_cents INTEGER NOT NULL DEFAULT 0, " +
+                "income_count INTEGER NOT NULL DEFAULT 0, " +
+                "expense_count INTEGER NOT NULL DEFAULT 0)");
+        String addNewTotals = "INSERT OR IGNORE INTO user_totals (user_id) VALUES (NEW.user_id); " +
+                "UPDATE user_totals SET " +
+                "income_cents = income_cents + (CASE WHEN NEW.amount_cents > 0 THEN NEW.amount_cents ELSE 0 END), " +
+                "expense_cents = expense_cents + (CASE WHEN NEW.amount_cents > 0 THEN 0 ELSE -NEW.amount_cents END), " +
+                "income_count = income_count + (NEW.amount_cents > 0), " +
+                "expense_count = expense_count + (NEW.amount_cents <= 0) " +
+                "WHERE user_id = NEW.user_id; ";
+        String removeOldTotals = "UPDATE user_totals SET " +
+                "income_cents = income_cents - (CASE WHEN OLD.amount_cents > 0 THEN OLD.amount_cents ELSE 0 END), " +
+                "expense_cents = expense_cents - (CASE WHEN OLD.amount_cents > 0 THEN 0 ELSE -OLD.amount_cents END), " +
+                "income_count = income_count - (OLD.amount_cents > 0), " +
+                "expense_count = expense_count - (OLD.amount_cents <= 0) " +
+                "WHERE user_id = OLD.user_id; ";
+        db.execSQL("CREATE TRIGGER trg_user_totals_insert AFTER INSERT ON expenses BEGIN " +
+                addNewTotals + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_delete AFTER DELETE ON expenses BEGIN " +
+                removeOldTotals + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_update AFTER UPDATE OF user_id, amount_cents ON expenses BEGIN " +
+                removeOldTotals + addNewTotals + "END");
+        db.execSQL("INSERT INTO user_totals (user_id, income_cents, expense_cents, income_count, expense_count) " +
+                "SELECT user_id, " +
+                "SUM(CASE WHEN amount_cents > 0 THEN amount_cents ELSE 0 END), " +
+                "SUM(CASE WHEN amount_cents > 0 THEN 0 ELSE -amount_cents END), " +
+                "SUM(amount_cents > 0), SUM(amount_cents <= 0) " +
+                "FROM expenses GROUP BY user_id");
+
+        db.execSQL("DROP TABLE monthly_rollups");
+        db.execSQL("CREATE TABLE monthly_rollups (" +
+                "user_id INTEGER NOT NULL, " +
+                "month INTEGER NOT NULL, " +
+                "category TEXT NOT NULL, " +
+                "is_income INTEGER NOT NULL, " +
+                "total_cents INTEGER NOT NULL DEFAULT 0, " +
+                "count INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (user_id, month, category, is_income)) WITHOUT ROWID");
+        String newKey = "user_id = NEW.user_id" +
+                " AND month = CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category = IFNULL(NEW.category, '')" +
+                " AND is_income = (NEW.amount_cents > 0)";
+        String oldKey = "user_id = OLD.user_id" +
+                " AND month = CAST(strftime('%Y%m', OLD.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category = IFNULL(OLD.category, '')" +
+                " AND is_income = (OLD.amount_cents > 0)";
+        String addNewRollup = "INSERT OR IGNORE INTO monthly_rollups (user_id, month, category, is_income) VALUES (" +
+                "NEW.user_id, CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER), " +
+                "IFNULL(NEW.category, ''), NEW.amount_cents > 0); " +
+                "UPDATE monthly_rollups SET total_cents = total_cents + ABS(NEW.amount_cents), count = count + 1 WHERE " +
+                newKey + "; ";
+        String removeOldRollup = "UPDATE monthly_rollups SET total_cents = total_cents - ABS(OLD.amount_cents), " +
+                "count = count - 1 WHERE " + oldKey + "; " +
+                "DELETE FROM monthly_rollups WHERE " + oldKey + " AND count = 0; ";
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_insert AFTER INSERT ON expenses BEGIN " +
+                addNewRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_delete AFTER DELETE ON expenses BEGIN " +
+                removeOldRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_update " +
+                "AFTER UPDATE OF user_id, amount_cents, category, epoch_day ON expenses BEGIN " +
+                removeOldRollup + addNewRollup + "END");
+        db.execSQL("INSERT INTO monthly_rollups (user_id, month, category, is_income, total_cents, count) " +
+                "SELECT user_id, CAST(strftime('%Y%m', epoch_day * 86400, 'unixepoch') AS INTEGER) AS m, " +
+                "IFNULL(category, '') AS c, amount_cents > 0 AS i, SUM(ABS(amount_cents)), COUNT(*) " +
+                "FROM expenses GROUP BY user_id, m, c, i");
+    }
+
+    // Version 6: category names move into a categories dictionary and expenses keep a small
+    // integer category_id. Rows without a category are filed under "Other".
+    private void migrateToCategoryIds(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE categories (" +
+                "id INTEGER PRIMARY KEY, " +
+                "name TEXT NOT NULL, " +
+                "kind INTEGER NOT NULL, " +
+                "UNIQUE (name, kind))");
+        // The categories the app has always offered, in their original spinner order
+        db.execSQL("INSERT INTO categories (name, kind) VALUES " +
+                "('Food & Dining', 0), ('Transportation', 0), ('Shopping', 0), " +
+                "('Entertainment', 0), ('Bills & Utilities', 0), ('Healthcare', 0), " +
+                "('Education', 0), ('Travel', 0), ('Other', 0), " +
+                "('Salary', 1), ('Business', 1), ('Investment', 1), ('Gift', 1), ('Other', 1)");
+        db.execSQL("INSERT OR IGNORE INTO categories (name, kind) " +
+                "SELECT DISTINCT IFNULL(NULLIF(category, ''), 'Other'), amount_cents > 0 " +
+                "FROM expenses ORDER BY 1");
+
+        db.execSQL("CREATE TABLE expenses_new (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "user_id INTEGER, " +
+                "amount_cents INTEGER NOT NULL DEFAULT 0, " +
+                "category_id INTEGER NOT NULL REFERENCES categories (id), " +
+                "description TEXT, " +
+                "date TEXT, " +
+                "epoch_day INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("INSERT INTO expenses_new (id, user_id, amount_cents, category_id, description, date, epoch_day) " +
+                "SELECT e.id, e.user_id, e.amount_cents, c.id, e.description, e.date, e.epoch_day " +
+                "FROM expenses e JOIN categories c " +
+                "ON c.name = IFNULL(NULLIF(e.category, ''), 'Other') AND c.kind = (e.amount_cents > 0)");
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, " +
+                "IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'expenses'), 0)) " +
+                "WHERE name = 'expenses_new'");
+        db.execSQL("DROP TABLE expenses");
+        db.execSQL("ALTER TABLE expenses_new RENAME TO expenses");
+        db.execSQL("CREATE INDEX idx_expenses_user_day ON expenses (user_id, epoch_day DESC, id DESC)");
+        db.execSQL("CREATE INDEX idx_expenses_user_amount ON expenses (user_id, amount_cents)");
+        db.execSQL("CREATE INDEX idx_expenses_user_category ON expenses (user_id, category_id)");
+
+        // Dropping expenses dropped the user_totals triggers; the table itself is unchanged
+        String addNewTotals = "INSERT OR IGNORE INTO user_totals (user_id) VALUES (NEW.user_id); " +
+                "UPDATE user_totals SET " +
+                "income_cents = income_cents + (CASE WHEN NEW.amount_cents > 0 THEN NEW.amount_cents ELSE 0 END), " +
+                "expense_cents = expense_cents + (CASE WHEN NEW.amount_cents > 0 THEN 0 ELSE -NEW.amount_cents END), " +
+                "income_count = income_count + (NEW.amount_cents > 0), " +
+                "expense_count = expense_count + (NEW.amount_cents <= 0) " +
+                "WHERE user_id = NEW.user_id; ";
+        String removeOldTotals = "UPDATE user_totals SET " +
+                "income_cents = income_cents - (CASE WHEN OLD.amount_cents > 0 THEN OLD.amount_cents ELSE 0 END), " +
+                "expense_cents = expense_cents - (CASE WHEN OLD.amount_cents > 0 THEN 0 ELSE -OLD.amount_cents END), " +
+                "income_count = income_count - (OLD.amount_cents > 0), " +
+                "expense_count = expense_count - (OLD.amount_cents <= 0) " +
+                "WHERE user_id = OLD.user_id; ";
+        db.execSQL("CREATE TRIGGER trg_user_totals_insert AFTER INSERT ON expenses BEGIN " +
+                addNewTotals + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_delete AFTER DELETE ON expenses BEGIN " +
+                removeOldTotals + "END");
+        db.execSQL("CREATE TRIGGER trg_user_totals_update AFTER UPDATE OF user_id, amount_cents ON expenses BEGIN " +
+                removeOldTotals + addNewTotals + "END");
+
+        db.execSQL("DROP TABLE monthly_rollups");
+        db.execSQL("CREATE TABLE monthly_rollups (" +
+                "user_id INTEGER NOT NULL, " +
+                "month INTEGER NOT NULL, " +
+                "category_id INTEGER NOT NULL, " +
+                "is_income INTEGER NOT NULL, " +
+                "total_cents INTEGER NOT NULL DEFAULT 0, " +
+                "count INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (user_id, month, category_id, is_income)) WITHOUT ROWID");
+        String newKey = "user_id = NEW.user_id" +
+                " AND month = CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category_id = NEW.category_id" +
+                " AND is_income = (NEW.amount_cents > 0)";
+        String oldKey = "user_id = OLD.user_id" +
+                " AND month = CAST(strftime('%Y%m', OLD.epoch_day * 86400, 'unixepoch') AS INTEGER)" +
+                " AND category_id = OLD.category_id" +
+                " AND is_income = (OLD.amount_cents > 0)";
+        String addNewRollup = "INSERT OR IGNORE INTO monthly_rollups (user_id, month, category_id, is_income) VALUES (" +
+                "NEW.user_id, CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER), " +
+                "NEW.category_id, NEW.amount_cents > 0); " +
+                "UPDATE monthly_rollups SET total_cents = total_cents + ABS(NEW.amount_cents), count = count + 1 WHERE " +
+                newKey + "; ";
+        String removeOldRollup = "UPDATE monthly_rollups SET total_cents = total_cents - ABS(OLD.amount_cents), " +
+                "count = count - 1 WHERE " + oldKey + "; " +
+                "DELETE FROM monthly_rollups WHERE " + oldKey + " AND count = 0; ";
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_insert AFTER INSERT ON expenses BEGIN " +
+                addNewRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_delete AFTER DELETE ON expenses BEGIN " +
+                removeOldRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_update " +
+                "AFTER UPDATE OF user_id, amount_cents, category_id, epoch_day ON expenses BEGIN " +
+                removeOldRollup + addNewRollup + "END");
+        db.execSQL("INSERT INTO monthly_rollups (user_id, month, category_id, is_income, total_cents, count) " +
+                "SELECT user_id, CAST(strftime('%Y%m', epoch_day * 86400, 'unixepoch') AS INTEGER) AS m, " +
+                "category_id, amount_cents > 0 AS i, SUM(ABS(amount_cents)), COUNT(*) " +
+                "FROM expenses GROUP BY user_id, m, category_id, i");
+    }
+
+    // Version 7: FTS4 index over description and category name, kept in step by triggers.
+    // unicode61 folds case and accents so "cafe" also finds "Café".
+    private void migrateToFullTextSearch(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE expenses_fts USING fts4(description, category, tokenize=unicode61)");
+        db.execSQL("CREATE TRIGGER trg_expenses_fts_insert AFTER INSERT ON expenses BEGIN " +
+                "INSERT INTO expenses_fts (docid, description, category) VALUES (NEW.id, NEW.description, " +
+                "(SELECT name FROM categories WHERE id = NEW.category_id)); END");
+        db.execSQL("CREATE TRIGGER trg_expenses_fts_delete AFTER DELETE ON expenses BEGIN " +
+                "DELETE FROM expenses_fts WHERE docid = OLD.id; END");
+        db.execSQL("CREATE TRIGGER trg_expenses_fts_update AFTER UPDATE OF description, category_id ON expenses BEGIN " +
+                "UPDATE expenses_fts SET description = NEW.description, " +
+                "category = (SELECT name FROM categories WHERE id = NEW.category_id) " +
+                "WHERE docid = NEW.id; END");
+        // A rename rewrites the index entries of that category's rows; expenses is untouched
+        db.execSQL("CREATE TRIGGER trg_expenses_fts_category_rename AFTER UPDATE OF name ON categories BEGIN " +
+                "UPDATE expenses_fts SET category = NEW.name " +
+                "WHERE docid IN (SELECT id FROM expenses WHERE category_id = NEW.id); END");
+        db.execSQL("INSERT INTO expenses_fts (docid, description, category) " +
+                "SELECT e.id, e.description, c.name FROM expenses e JOIN categories c ON c.id = e.category_id");
+    }
+
+    // Version 8: undated rows move from day 0, which is also 1970-01-01, to EpochDay.UNKNOWN,
+    // and the monthly rollups file them under month 0. Every epoch_day is re-derived with
+    // EpochDay.fromIsoDate, the parser inserts use, as julianday() in version 2 accepted other
+    // spellings and rejected non-ASCII digits.
+    private void migrateUnknownEpochDay(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER trg_monthly_rollups_insert");
+        db.execSQL("DROP TRIGGER trg_monthly_rollups_delete");
+        db.execSQL("DROP TRIGGER trg_monthly_rollups_update");
+
+        // Walked in id order a chunk at a time, so no cursor spans the whole table
+        SQLiteStatement update = db.compileStatement("UPDATE expenses SET epoch_day = ? WHERE id = ?");
+        try {
+            long lastId = 0;
+            while (true) {
+                Cursor cursor = db.rawQuery("SELECT id, date, epoch_day FROM expenses WHERE id > ? " +
+                        "ORDER BY id LIMIT 1000", new String[]{String.valueOf(lastId)});
+                try {
+                    if (!cursor.moveToFirst()) {
+                        break;
+                    }
+                    do {
+                        lastId = cursor.getLong(0);
+                        int epochDay = EpochDay.fromIsoDate(cursor.getString(1));
+                        if (epochDay != cursor.getInt(2)) {
+                            update.bindLong(1, epochDay);
+                            update.bindLong(2, lastId);
+                            update.executeUpdateDelete();
+                        }
+                    } while (cursor.moveToNext());
+                } finally {
+                    cursor.close();
+                }
+            }
+        } finally {
+            update.close();
+        }
+
+        String newMonth = "CASE WHEN NEW.epoch_day = -2147483648 THEN 0 " +
+                "ELSE CAST(strftime('%Y%m', NEW.epoch_day * 86400, 'unixepoch') AS INTEGER) END";
+        String oldMonth = "CASE WHEN OLD.epoch_day = -2147483648 THEN 0 " +
+                "ELSE CAST(strftime('%Y%m', OLD.epoch_day * 86400, 'unixepoch') AS INTEGER) END";
+        String newKey = "user_id = NEW.user_id" +
+                " AND month = (" + newMonth + ")" +
+                " AND category_id = NEW.category_id" +
+                " AND is_income = (NEW.amount_cents > 0)";
+        String oldKey = "user_id = OLD.user_id" +
+                " AND month = (" + oldMonth + ")" +
+                " AND category_id = OLD.category_id" +
+                " AND is_income = (OLD.amount_cents > 0)";
+        String addNewRollup = "INSERT OR IGNORE INTO monthly_rollups (user_id, month, category_id, is_income) VALUES (" +
+                "NEW.user_id, " + newMonth + ", NEW.category_id, NEW.amount_cents > 0); " +
+                "UPDATE monthly_rollups SET total_cents = total_cents + ABS(NEW.amount_cents), count = count + 1 WHERE " +
+                newKey + "; ";
+        String removeOldRollup = "UPDATE monthly_rollups SET total_cents = total_cents - ABS(OLD.amount_cents), " +
+                "count = count - 1 WHERE " + oldKey + "; " +
+                "DELETE FROM monthly_rollups WHERE " + oldKey + " AND count = 0; ";
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_insert AFTER INSERT ON expenses BEGIN " +
+                addNewRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_delete AFTER DELETE ON expenses BEGIN " +
+                removeOldRollup + "END");
+        db.execSQL("CREATE TRIGGER trg_monthly_rollups_update " +
+                "AFTER UPDATE OF user_id, amount_cents, category_id, epoch_day ON expenses BEGIN " +
+                removeOldRollup + addNewRollup + "END");
+
+        db.execSQL("DELETE FROM monthly_rollups");
+        db.execSQL("INSERT INTO monthly_rollups (user_id, month, category_id, is_income, total_cents, count) " +
+                "SELECT user_id, (CASE WHEN epoch_day = -2147483648 THEN 0 " +
+                "ELSE CAST(strftime('%Y%m', epoch_day * 86400, 'unixepoch') AS INTEGER) END) AS m, " +
+                "category_id, amount_cents > 0 AS i, SUM(ABS(amount_cents)), COUNT(*) " +
+                "FROM expenses GROUP BY user_id, m, category_id, i");
+    }
+
+    // Version 9: a flag for verifySummaryTablesIfRequested(), so the full check runs only
+    // after something that could have left the summary tables wrong
+    private void migrateToSummaryCheck(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE summary_check (pending INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO summary_check (pending) VALUES (0)");
+    }
+
+    // Recompute every user's totals from the expenses table
+    private void rebuildUserTotals(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_USER_TOTALS);
+        db.execSQL("INSERT INTO " + TABLE_USER_TOTALS + " (" + KEY_USER_ID + ", " +
+                KEY_INCOME + ", " + KEY_EXPENSE + ", " + KEY_INCOME_COUNT + ", " + KEY_EXPENSE_COUNT + ")" +
+                " SELECT " + KEY_USER_ID + ", " +
+                "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN " + KEY_AMOUNT + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN 0 ELSE -" + KEY_AMOUNT + " END), " +
+                "SUM(" + KEY_AMOUNT + " > 0), " +
+                "SUM(" + KEY_AMOUNT + " <= 0)" +
+                " FROM " + TABLE_EXPENSES +
+                " GROUP BY " + KEY_USER_ID);
+    }
+
+    // Recompute every monthly rollup from the expenses table
+    private void rebuildMonthlyRollups(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_MONTHLY_ROLLUPS);
+        db.execSQL("INSERT INTO " + TABLE_MONTHLY_ROLLUPS + " (" + KEY_USER_ID + ", " + KEY_MONTH + ", " +
+                KEY_CATEGORY_ID + ", " + KEY_IS_INCOME + ", " + KEY_TOTAL + ", " + KEY_COUNT + ")" +
+                " SELECT " + KEY_USER_ID + ", " + MONTH_OF_EPOCH_DAY + " AS m, " +
+                KEY_CATEGORY_ID + ", " + KEY_AMOUNT + " > 0 AS i, " +
+                "SUM(ABS(" + KEY_AMOUNT + ")), COUNT(*)" +
+                " FROM " + TABLE_EXPENSES +
+                " GROUP BY " + KEY_USER_ID + ", m, " + KEY_CATEGORY_ID + ", i");
     }
 
     // Add new expense
@@ -54,66 +660,479 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(KEY_USER_ID, expense.getUserId());
-        values.put(KEY_AMOUNT, expense.getAmount());
-        values.put(KEY_CATEGORY, expense.getCategory());
+        values.put(KEY_AMOUNT, expense.getAmountCents());
+        values.put(KEY_CATEGORY_ID, resolveCategoryId(db, expense));
         values.put(KEY_DESCRIPTION, expense.getDescription());
         values.put(KEY_DATE, expense.getDate());
+        int epochDay = EpochDay.fromIsoDate(expense.getDate());
+        values.put(KEY_EPOCH_DAY, epochDay);
 
-        long id = db.insert(TABLE_EXPENSES, null, values);
-        db.close();
+        long id;
+        try {
+            id = db.insert(TABLE_EXPENSES, null, values);
+        } finally {
+            writeVersion.incrementAndGet();
+        }
+        if (id != -1) {
+            ExpenseChange change = new ExpenseChange(expense.getUserId());
+            change.addRow(ExpenseChange.INSERTED, (int) id, epochDay, expense.getCategoryId());
+            changeBus.publish(change);
+        }
         return id;
     }
 
+    // Add many expenses in one transaction, reusing a single compiled statement
+    public int addExpenses(List<Expense> expenses) {
+        return addExpenses(expenses, null);
+    }
+
+    public int addExpenses(List<Expense> expenses, ProgressListener listener) {
+        int total = expenses.size();
+        BulkInsert bulkInsert = beginBulkInsert();
+        try {
+            for (int i = 0; i < total; i++) {
+                bulkInsert.add(expenses.get(i));
+                if (listener != null && (i + 1) % PROGRESS_INTERVAL == 0) {
+                    listener.onProgress(i + 1, total);
+                }
+            }
+            bulkInsert.commit();
+        } finally {
+            bulkInsert.close();
+        }
+
+        if (listener != null) {
+            listener.onProgress(total, total);
+        }
+        return bulkInsert.getCount();
+    }
+
+    // Start a streaming insert; nothing is visible to readers until commit()
+    public BulkInsert beginBulkInsert() {
+        return beginBulkInsert(null);
+    }
+
+    // As beginBulkInsert(), but on commit the rows' change is merged into deferredChanges
+    // instead of being published. A job made of many inserts passes them all the same map and
+    // hands it to publishChanges() once when it ends, so open screens refresh once.
+    public BulkInsert beginBulkInsert(Map<Integer, ExpenseChange> deferredChanges) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        // Non-exclusive so WAL readers keep running while the import is in progress
+        db.beginTransactionNonExclusive();
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT INTO " + TABLE_EXPENSES + " (" +
+                    KEY_USER_ID + ", " + KEY_AMOUNT + ", " + KEY_CATEGORY_ID + ", " +
+                    KEY_DESCRIPTION + ", " + KEY_DATE + ", " + KEY_EPOCH_DAY +
+                    ") VALUES (?, ?, ?, ?, ?, ?)");
+            return new BulkInsert(db, statement, writeVersion, changeBus, deferredChanges);
+        } catch (RuntimeException e) {
+            db.endTransaction();
+            throw e;
+        }
+    }
+
+    public static final class BulkInsert implements Closeable {
+        private final SQLiteDatabase db;
+        private final SQLiteStatement statement;
+        private final AtomicLong writeVersion;
+        private final ExpenseChangeBus changeBus;
+        // Published once when the import commits, however many rows it added
+        private final Map<Integer, ExpenseChange> changes = new HashMap<>();
+        // Null to publish on commit, otherwise where the caller collects changes to publish later
+        private final Map<Integer, ExpenseChange> deferredChanges;
+        // Category ids looked up so far, so each name costs one query per import
+        private final Map<String, Integer> expenseCategoryIds = new HashMap<>();
+        private final Map<String, Integer> incomeCategoryIds = new HashMap<>();
+        private int count;
+        private boolean committed;
+        private boolean closed;
+
+        private BulkInsert(SQLiteDatabase db, SQLiteStatement statement, AtomicLong writeVersion,
+                           ExpenseChangeBus changeBus, Map<Integer, ExpenseChange> deferredChanges) {
+            this.db = db;
+            this.statement = statement;
+            this.writeVersion = writeVersion;
+            this.changeBus = changeBus;
+            this.deferredChanges = deferredChanges;
+        }
+
+        // Insert one row and store the generated id back on the expense
+        public long add(Expense expense) {
+            statement.bindLong(1, expense.getUserId());
+            statement.bindLong(2, expense.getAmountCents());
+            statement.bindLong(3, categoryId(expense));
+            bindText(4, expense.getDescription());
+            bindText(5, expense.getDate());
+            int epochDay = EpochDay.fromIsoDate(expense.getDate());
+            statement.bindLong(6, epochDay);
+
+            long id = statement.executeInsert();
+            if (id != -1) {
+                expense.setId((int) id);
+                count++;
+                changeFor(changes, expense.getUserId())
+                        .addRow(ExpenseChange.INSERTED, (int) id, epochDay, expense.getCategoryId());
+            }
+            return id;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        // Mark the rows as successful; they are written when close() ends the transaction
+        public void commit() {
+            db.setTransactionSuccessful();
+            committed = true;
+        }
+
+        // Ends the transaction, rolling back if commit() was not called
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            statement.close();
+            try {
+                db.endTransaction();
+                if (!committed) {
+                    // Rolled back after a failure; have the summary tables checked on next start
+                    requestSummaryCheck(db);
+                }
+            } finally {
+                writeVersion.incrementAndGet();
+            }
+            if (committed) {
+                for (ExpenseChange change : changes.values()) {
+                    if (deferredChanges == null) {
+                        changeBus.publish(change);
+                    } else {
+                        changeFor(deferredChanges, change.getUserId()).merge(change);
+                    }
+                }
+            }
+        }
+
+        // Names that aren't categories yet, such as a bank's own labels, go under "Other"
+        private int categoryId(Expense expense) {
+            if (expense.getCategoryId() > 0) {
+                return expense.getCategoryId();
+            }
+            Map<String, Integer> ids = expense.isIncome() ? incomeCategoryIds : expenseCategoryIds;
+            Integer id = ids.get(expense.getCategory());
+            if (id == null) {
+                String name = expense.getCategory();
+                id = resolveCategoryId(db, expense, false);
+                ids.put(name, id);
+            }
+            expense.setCategoryId(id);
+            return id;
+        }
+
+        private void bindText(int index, String value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, value);
+            }
+        }
+    }
+
     // Get all expenses for a user
     public List<Expense> getAllExpenses(int userId) {
         List<Expense> expenseList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_EXPENSES +
-                " WHERE " + KEY_USER_ID + " = " + userId +
-                " ORDER BY " + KEY_DATE + " DESC";
+        String selectQuery = "SELECT e.*, c." + KEY_NAME + " AS " + KEY_CATEGORY_NAME +
+                " FROM " + EXPENSES_WITH_CATEGORY +
+                " WHERE e." + KEY_USER_ID + " = ?" +
+                " ORDER BY e." + KEY_EPOCH_DAY + " DESC, e." + KEY_ID + " DESC";
 
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+        Cursor cursor = db.rawQuery(selectQuery, new String[]{String.valueOf(userId)});
 
-        if (cursor.moveToFirst()) {
-            do {
-                Expense expense = new Expense();
-                expense.setId(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_ID)));
-                expense.setUserId(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_USER_ID)));
-                expense.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(KEY_AMOUNT)));
-                expense.setCategory(cursor.getString(cursor.getColumnIndexOrThrow(KEY_CATEGORY)));
-                expense.setDescription(cursor.getString(cursor.getColumnIndexOrThrow(KEY_DESCRIPTION)));
-                expense.setDate(cursor.getString(cursor.getColumnIndexOrThrow(KEY_DATE)));
-                expenseList.add(expense);
-            } while (cursor.moveToNext());
+        // Resolve column positions once rather than once per row
+        int idIndex = cursor.getColumnIndexOrThrow(KEY_ID);
+        int userIdIndex = cursor.getColumnIndexOrThrow(KEY_USER_ID);
+        int amountIndex = cursor.getColumnIndexOrThrow(KEY_AMOUNT);
+        int categoryIdIndex = cursor.getColumnIndexOrThrow(KEY_CATEGORY_ID);
+        int categoryIndex = cursor.getColumnIndexOrThrow(KEY_CATEGORY_NAME);
+        int descriptionIndex = cursor.getColumnIndexOrThrow(KEY_DESCRIPTION);
+        int dateIndex = cursor.getColumnIndexOrThrow(KEY_DATE);
+        int epochDayIndex = cursor.getColumnIndexOrThrow(KEY_EPOCH_DAY);
+
+        while (cursor.moveToNext()) {
+            Expense expense = new Expense();
+            expense.setId(cursor.getInt(idIndex));
+            expense.setUserId(cursor.getInt(userIdIndex));
+            expense.setAmountCents(cursor.getLong(amountIndex));
+            expense.setCategoryId(cursor.getInt(categoryIdIndex));
+            expense.setCategory(cursor.getString(categoryIndex));
+            expense.setDescription(cursor.getString(descriptionIndex));
+            expense.setDate(cursor.getString(dateIndex));
+            expense.setEpochDay(cursor.getInt(epochDayIndex));
+            expenseList.add(expense);
         }
 
         cursor.close();
-        db.close();
         return expenseList;
     }
 
+    // Stream a user's expenses in [fromDay, toDay], oldest first, without building a list.
+    // With ITERATE_REUSE_ROW the consumer receives the same Expense instance every call and
+    // must copy anything it keeps; ITERATE_SKIP_DESCRIPTION leaves descriptions unread.
+    public int forEachExpense(int userId, int fromDay, int toDay, int flags, ExpenseConsumer consumer) {
+        boolean reuseRow = (flags & ITERATE_REUSE_ROW) != 0;
+        boolean withDescription = (flags & ITERATE_SKIP_DESCRIPTION) == 0;
+
+        // Read in keyset chunks, as the list pages are, rather than through one cursor: a
+        // cursor refilling its window re-runs the query and steps past every earlier row, so
+        // a long walk would cost quadratic time. The day lower bound is repeated outside the
+        // OR so each chunk is a range seek of the (user_id, epoch_day, id) index.
+        String chunkQuery = "SELECT e." + KEY_ID + ", e." + KEY_AMOUNT + ", e." + KEY_CATEGORY_ID + ", " +
+                "c." + KEY_NAME + ", e." + KEY_DATE + ", e." + KEY_EPOCH_DAY +
+                (withDescription ? ", e." + KEY_DESCRIPTION : "") +
+                " FROM " + EXPENSES_WITH_CATEGORY +
+                " WHERE e." + KEY_USER_ID + " = ?" +
+                " AND e." + KEY_EPOCH_DAY + " BETWEEN ? AND ?" +
+                " AND (e." + KEY_EPOCH_DAY + " > ? OR e." + KEY_ID + " > ?)" +
+                " ORDER BY e." + KEY_EPOCH_DAY + ", e." + KEY_ID +
+                " LIMIT " + ITERATE_CHUNK_SIZE;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] args = new String[]{String.valueOf(userId), null, String.valueOf(toDay), null, null};
+        // Ids start at 1, so (fromDay, 0) sorts before every row in the range
+        int afterDay = fromDay;
+        int afterId = 0;
+
+        int visited = 0;
+        Expense row = reuseRow ? new Expense() : null;
+        while (true) {
+            args[1] = String.valueOf(afterDay);
+            args[3] = String.valueOf(afterDay);
+            args[4] = String.valueOf(afterId);
+            Cursor cursor = db.rawQuery(chunkQuery, args);
+            int chunkRows = 0;
+            try {
+                // Columns are read by their fixed position in the projection above
+                while (cursor.moveToNext()) {
+                    Expense expense = reuseRow ? row : new Expense();
+                    afterId = cursor.getInt(0);
+                    afterDay = cursor.getInt(5);
+                    expense.setId(afterId);
+                    expense.setUserId(userId);
+                    expense.setAmountCents(cursor.getLong(1));
+                    expense.setCategoryId(cursor.getInt(2));
+                    expense.setCategory(cursor.getString(3));
+                    expense.setDate(cursor.getString(4));
+                    expense.setEpochDay(afterDay);
+                    expense.setDescription(withDescription ? cursor.getString(6) : null);
+                    visited++;
+                    chunkRows++;
+                    if (!consumer.accept(expense)) {
+                        return visited;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            if (chunkRows < ITERATE_CHUNK_SIZE) {
+                return visited;
+            }
+        }
+    }
+
+    // Load a user's whole history into a columnar snapshot, oldest first. Columns are copied
+    // from one reused row into primitive arrays, with no Expense object per row.
+    public TransactionSnapshot loadSnapshot(int userId) {
+        // The totals row gives the exact row count, so the columns are sized once
+        final TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(userId,
+                getUserTotals(userId).getTransactionCount());
+        forEachExpense(userId, ALL_DAYS_FROM, ALL_DAYS_TO, ITERATE_REUSE_ROW, new ExpenseConsumer() {
+            @Override
+            public boolean accept(Expense expense) {
+                builder.add(expense.getAmountCents(), expense.getEpochDay(), expense.getCategory(),
+                        expense.getDescription());
+                return true;
+            }
+        });
+        return builder.build();
+    }
+
+    // Get one page of a user's expenses, newest first, strictly after the (day, id) key of
+    // the previous page's last row. The redundant epoch_day bound lets the seek start at the
+    // key in the (user_id, epoch_day, id) index, so every page costs the same no matter how
+    // deep into the history it is.
+    public List<Expense> getExpensesPage(int userId, int afterDay, int afterId, int limit) {
+        String pageQuery = "SELECT " + PAGE_COLUMNS +
+                " FROM " + EXPENSES_WITH_CATEGORY +
+                " WHERE e." + KEY_USER_ID + " = ?" +
+                " AND e." + KEY_EPOCH_DAY + " <= ?" +
+                " AND (e." + KEY_EPOCH_DAY + " < ? OR (e." + KEY_EPOCH_DAY + " = ? AND e." + KEY_ID + " < ?))" +
+                " ORDER BY e." + KEY_EPOCH_DAY + " DESC, e." + KEY_ID + " DESC" +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(pageQuery, keysetArgs(null, userId, afterDay, afterId));
+        return readPage(cursor, limit);
+    }
+
+    // The page of a user's expenses just before the (day, id) key of the first row shown,
+    // still returned newest first. Lets a list that dropped its newest rows page back to them.
+    public List<Expense> getNewerExpensesPage(int userId, int beforeDay, int beforeId, int limit) {
+        String pageQuery = "SELECT " + PAGE_COLUMNS +
+                " FROM " + EXPENSES_WITH_CATEGORY +
+                " WHERE e." + KEY_USER_ID + " = ?" +
+                " AND e." + KEY_EPOCH_DAY + " >= ?" +
+                " AND (e." + KEY_EPOCH_DAY + " > ? OR (e." + KEY_EPOCH_DAY + " = ? AND e." + KEY_ID + " > ?))" +
+                " ORDER BY e." + KEY_EPOCH_DAY + ", e." + KEY_ID +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(pageQuery, keysetArgs(null, userId, beforeDay, beforeId));
+        List<Expense> page = readPage(cursor, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    // Same paging as getExpensesPage(), limited to rows whose description or category has
+    // words starting with every word of the search text ("cof star" finds "Coffee at
+    // Starbucks"). The full-text index finds the matches; only they are sorted and paged.
+    public List<Expense> searchExpensesPage(int userId, String searchText, int afterDay, int afterId, int limit) {
+        String match = toPrefixMatch(searchText);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+
+        String searchQuery = "SELECT " + PAGE_COLUMNS +
+                " FROM " + TABLE_EXPENSES_FTS +
+                " CROSS JOIN " + EXPENSES_WITH_CATEGORY +
+                " AND e." + KEY_ID + " = " + TABLE_EXPENSES_FTS + ".docid" +
+                " WHERE " + TABLE_EXPENSES_FTS + " MATCH ?" +
+                " AND e." + KEY_USER_ID + " = ?" +
+                " AND e." + KEY_EPOCH_DAY + " <= ?" +
+                " AND (e." + KEY_EPOCH_DAY + " < ? OR (e." + KEY_EPOCH_DAY + " = ? AND e." + KEY_ID + " < ?))" +
+                " ORDER BY e." + KEY_EPOCH_DAY + " DESC, e." + KEY_ID + " DESC" +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(searchQuery, keysetArgs(match, userId, afterDay, afterId));
+        return readPage(cursor, limit);
+    }
+
+    // Search counterpart of getNewerExpensesPage()
+    public List<Expense> searchNewerExpensesPage(int userId, String searchText, int beforeDay, int beforeId,
+                                                 int limit) {
+        String match = toPrefixMatch(searchText);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+
+        String searchQuery = "SELECT " + PAGE_COLUMNS +
+                " FROM " + TABLE_EXPENSES_FTS +
+                " CROSS JOIN " + EXPENSES_WITH_CATEGORY +
+                " AND e." + KEY_ID + " = " + TABLE_EXPENSES_FTS + ".docid" +
+                " WHERE " + TABLE_EXPENSES_FTS + " MATCH ?" +
+                " AND e." + KEY_USER_ID + " = ?" +
+                " AND e." + KEY_EPOCH_DAY + " >= ?" +
+                " AND (e." + KEY_EPOCH_DAY + " > ? OR (e." + KEY_EPOCH_DAY + " = ? AND e." + KEY_ID + " > ?))" +
+                " ORDER BY e." + KEY_EPOCH_DAY + ", e." + KEY_ID +
+                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(searchQuery, keysetArgs(match, userId, beforeDay, beforeId));
+        List<Expense> page = readPage(cursor, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    // Arguments for the page queries above: the optional MATCH text, the user, then the
+    // (day, id) key with its day repeated for the range bound
+    private static String[] keysetArgs(String match, int userId, int day, int id) {
+        String[] args = {String.valueOf(userId), String.valueOf(day), String.valueOf(day),
+                String.valueOf(day), String.valueOf(id)};
+        if (match == null) {
+            return args;
+        }
+        String[] withMatch = new String[args.length + 1];
+        withMatch[0] = match;
+        System.arraycopy(args, 0, withMatch, 1, args.length);
+        return withMatch;
+    }
+
+    // Turn free text into an FTS prefix query: each run of letters or digits becomes
+    // "word*", and the words are ANDed. Returns null when there is nothing to search for.
+    private static String toPrefixMatch(String searchText) {
+        if (searchText == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        int length = searchText.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(searchText.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(searchText.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                // Lower case so words like OR and NOT are never read as operators
+                match.append(searchText.substring(start, i).toLowerCase(Locale.ROOT)).append('*');
+            }
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    // Reads rows selected with PAGE_COLUMNS, in order, and closes the cursor
+    private static List<Expense> readPage(Cursor cursor, int limit) {
+        List<Expense> page = new ArrayList<>(limit);
+        try {
+            while (cursor.moveToNext()) {
+                Expense expense = new Expense();
+                expense.setId(cursor.getInt(0));
+                expense.setUserId(cursor.getInt(1));
+                expense.setAmountCents(cursor.getLong(2));
+                expense.setCategoryId(cursor.getInt(3));
+                expense.setCategory(cursor.getString(4));
+                expense.setDescription(cursor.getString(5));
+                expense.setDate(cursor.getString(6));
+                expense.setEpochDay(cursor.getInt(7));
+                page.add(expense);
+            }
+        } finally {
+            cursor.close();
+        }
+        return page;
+    }
+
     // Get single expense
     public Expense getExpense(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_EXPENSES,
-                new String[]{KEY_ID, KEY_USER_ID, KEY_AMOUNT, KEY_CATEGORY, KEY_DESCRIPTION, KEY_DATE},
-                KEY_ID + "=?",
-                new String[]{String.valueOf(id)},
-                null, null, null, null);
+        Cursor cursor = db.rawQuery("SELECT e.*, c." + KEY_NAME + " AS " + KEY_CATEGORY_NAME +
+                        " FROM " + EXPENSES_WITH_CATEGORY +
+                        " WHERE e." + KEY_ID + " = ?",
+                new String[]{String.valueOf(id)});
 
         Expense expense = null;
         if (cursor != null && cursor.moveToFirst()) {
             expense = new Expense();
             expense.setId(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_ID)));
             expense.setUserId(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_USER_ID)));
-            expense.setAmount(cursor.getDouble(cursor.getColumnIndexOrThrow(KEY_AMOUNT)));
-            expense.setCategory(cursor.getString(cursor.getColumnIndexOrThrow(KEY_CATEGORY)));
+            expense.setAmountCents(cursor.getLong(cursor.getColumnIndexOrThrow(KEY_AMOUNT)));
+            expense.setCategoryId(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_CATEGORY_ID)));
+            expense.setCategory(cursor.getString(cursor.getColumnIndexOrThrow(KEY_CATEGORY_NAME)));
             expense.setDescription(cursor.getString(cursor.getColumnIndexOrThrow(KEY_DESCRIPTION)));
             expense.setDate(cursor.getString(cursor.getColumnIndexOrThrow(KEY_DATE)));
+            expense.setEpochDay(cursor.getInt(cursor.getColumnIndexOrThrow(KEY_EPOCH_DAY)));
+        }
+        if (cursor != null) {
             cursor.close();
         }
 
-        db.close();
         return expense;
     }
 
@@ -122,35 +1141,461 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(KEY_USER_ID, expense.getUserId());
-        values.put(KEY_AMOUNT, expense.getAmount());
-        values.put(KEY_CATEGORY, expense.getCategory());
+        values.put(KEY_AMOUNT, expense.getAmountCents());
+        values.put(KEY_CATEGORY_ID, resolveCategoryId(db, expense));
         values.put(KEY_DESCRIPTION, expense.getDescription());
         values.put(KEY_DATE, expense.getDate());
+        int epochDay = EpochDay.fromIsoDate(expense.getDate());
+        values.put(KEY_EPOCH_DAY, epochDay);
 
-        int rowsAffected = db.update(TABLE_EXPENSES, values,
-                KEY_ID + " = ?",
-                new String[]{String.valueOf(expense.getId())});
-        db.close();
+        String[] args = new String[]{String.valueOf(expense.getId())};
+        // Both the month and category the row leaves and the ones it moves to are affected
+        Map<Integer, ExpenseChange> changes = new HashMap<>();
+        collectChanges(db, ExpenseChange.UPDATED, KEY_ID + " = ?", args, changes);
+        int rowsAffected;
+        try {
+            rowsAffected = db.update(TABLE_EXPENSES, values, KEY_ID + " = ?", args);
+        } finally {
+            writeVersion.incrementAndGet();
+        }
+        if (rowsAffected > 0) {
+            changeFor(changes, expense.getUserId())
+                    .addRow(ExpenseChange.UPDATED, expense.getId(), epochDay, expense.getCategoryId());
+            publishChanges(changes);
+        }
         return rowsAffected;
     }
 
     // Delete expense
     public void deleteExpense(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_EXPENSES, KEY_ID + " = ?",
-                new String[]{String.valueOf(id)});
-        db.close();
+        String[] args = new String[]{String.valueOf(id)};
+        Map<Integer, ExpenseChange> changes = new HashMap<>();
+        collectChanges(db, ExpenseChange.DELETED, KEY_ID + " = ?", args, changes);
+        try {
+            db.delete(TABLE_EXPENSES, KEY_ID + " = ?", args);
+        } finally {
+            writeVersion.incrementAndGet();
+        }
+        publishChanges(changes);
+    }
+
+    // Delete several expenses in one transaction using IN (...) batches
+    public int deleteExpenses(long[] ids) {
+        if (ids.length == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        int rowsDeleted = 0;
+        Map<Integer, ExpenseChange> changes = new HashMap<>();
+        db.beginTransactionNonExclusive();
+        try {
+            for (int start = 0; start < ids.length; start += MAX_IDS_PER_STATEMENT) {
+                int end = Math.min(start + MAX_IDS_PER_STATEMENT, ids.length);
+                StringBuilder placeholders = new StringBuilder();
+                String[] args = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    placeholders.append(i == start ? "?" : ",?");
+                    args[i - start] = String.valueOf(ids[i]);
+                }
+                String selection = KEY_ID + " IN (" + placeholders + ")";
+                collectChanges(db, ExpenseChange.DELETED, selection, args, changes);
+                rowsDeleted += db.delete(TABLE_EXPENSES, selection, args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writeVersion.incrementAndGet();
+        }
+        publishChanges(changes);
+        return rowsDeleted;
+    }
+
+    // Delete every expense belonging to a user with a single statement
+    public int deleteAllForUser(int userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int rowsDeleted;
+        try {
+            rowsDeleted = db.delete(TABLE_EXPENSES, KEY_USER_ID + " = ?",
+                    new String[]{String.valueOf(userId)});
+        } finally {
+            writeVersion.incrementAndGet();
+        }
+        if (rowsDeleted > 0) {
+            ExpenseChange change = new ExpenseChange(userId);
+            change.markUnbounded();
+            changeBus.publish(change);
+        }
+        return rowsDeleted;
+    }
+
+    // All categories, in the order they were created (the default ones first)
+    public List<Category> getCategories() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_CATEGORIES,
+                new String[]{KEY_ID, KEY_NAME, KEY_KIND},
+                null, null, null, null, KEY_ID);
+
+        List<Category> categories = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            categories.add(new Category(cursor.getInt(0), cursor.getString(1), cursor.getInt(2)));
+        }
+        cursor.close();
+        return categories;
+    }
+
+    // Rows reference categories by id, so a rename touches a single row. Returns false when
+    // the category does not exist or the kind already has a category with that name.
+    public boolean renameCategory(int categoryId, String newName) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(KEY_NAME, newName);
+        boolean renamed;
+        try {
+            renamed = db.updateWithOnConflict(TABLE_CATEGORIES, values,
+                    KEY_ID + " = ?",
+                    new String[]{String.valueOf(categoryId)},
+                    SQLiteDatabase.CONFLICT_IGNORE) > 0;
+        } finally {
+            writeVersion.incrementAndGet();
+        }
+        if (renamed) {
+            // Categories are shared, so every user's rows in it now show the new name
+            ExpenseChange change = new ExpenseChange(ExpenseChange.ALL_USERS);
+            change.addRenamedCategory(categoryId);
+            changeBus.publish(change);
+        }
+        return renamed;
+    }
+
+    // Describe the rows matching the selection, before they are updated or deleted, as one
+    // change per user. A primary-key lookup, so it adds little to the write it precedes.
+    private static void collectChanges(SQLiteDatabase db, int kind, String selection, String[] args,
+                                       Map<Integer, ExpenseChange> changes) {
+        Cursor cursor = db.query(TABLE_EXPENSES,
+                new String[]{KEY_ID, KEY_USER_ID, KEY_EPOCH_DAY, KEY_CATEGORY_ID},
+                selection, args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                changeFor(changes, cursor.getInt(1))
+                        .addRow(kind, cursor.getInt(0), cursor.getInt(2), cursor.getInt(3));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ExpenseChange changeFor(Map<Integer, ExpenseChange> changes, int userId) {
+        ExpenseChange change = changes.get(userId);
+        if (change == null) {
+            change = new ExpenseChange(userId);
+            changes.put(userId, change);
+        }
+        return change;
+    }
+
+    // Hands committed changes to the bus, including those collected by beginBulkInsert(Map)
+    void publishChanges(Map<Integer, ExpenseChange> changes) {
+        for (ExpenseChange change : changes.values()) {
+            changeBus.publish(change);
+        }
+    }
+
+    // The expense's category id, looking its name up (and creating it if new) when unset
+    private static int resolveCategoryId(SQLiteDatabase db, Expense expense) {
+        return resolveCategoryId(db, expense, true);
+    }
+
+    // With create false a name that isn't a category yet is filed under DEFAULT_CATEGORY, so
+    // bulk writes such as statement imports never add to the categories every user picks from
+    private static int resolveCategoryId(SQLiteDatabase db, Expense expense, boolean create) {
+        if (expense.getCategoryId() > 0) {
+            return expense.getCategoryId();
+        }
+
+        String name = expense.getCategory() == null || expense.getCategory().isEmpty()
+                ? DEFAULT_CATEGORY : expense.getCategory();
+        int kind = expense.isIncome() ? Category.KIND_INCOME : Category.KIND_EXPENSE;
+        String[] args = new String[]{name, String.valueOf(kind)};
+        String lookupQuery = "SELECT " + KEY_ID + " FROM " + TABLE_CATEGORIES +
+                " WHERE " + KEY_NAME + " = ? AND " + KEY_KIND + " = ?";
+
+        int id = (int) simpleQueryForLong(db, lookupQuery, args);
+        if (id == 0 && !create && !name.equals(DEFAULT_CATEGORY)) {
+            name = DEFAULT_CATEGORY;
+            args[0] = name;
+            expense.setCategory(name);
+            id = (int) simpleQueryForLong(db, lookupQuery, args);
+        }
+        if (id == 0) {
+            ContentValues values = new ContentValues();
+            values.put(KEY_NAME, name);
+            values.put(KEY_KIND, kind);
+            id = (int) db.insertWithOnConflict(TABLE_CATEGORIES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id == -1) {
+                // Another writer created it first
+                id = (int) simpleQueryForLong(db, lookupQuery, args);
+            }
+        }
+        expense.setCategoryId(id);
+        return id;
+    }
+
+    // Highest expense id so far; rows inserted afterwards all have larger ids
+    public int getMaxExpenseId() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) simpleQueryForLong(db, "SELECT IFNULL(MAX(" + KEY_ID + "), 0) FROM " + TABLE_EXPENSES, null);
     }
 
     // Get expense count
     public int getExpenseCount(int userId) {
-        String countQuery = "SELECT * FROM " + TABLE_EXPENSES +
-                " WHERE " + KEY_USER_ID + " = " + userId;
+        // COUNT(*) is answered from the (user_id, epoch_day) index without reading rows
+        String countQuery = "SELECT COUNT(*) FROM " + TABLE_EXPENSES +
+                " WHERE " + KEY_USER_ID + " = ?";
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(countQuery, null);
-        int count = cursor.getCount();
+        Cursor cursor = db.rawQuery(countQuery, new String[]{String.valueOf(userId)});
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
         cursor.close();
-        db.close();
         return count;
     }
+
+    // Read the trigger-maintained totals for a user: a single primary key lookup
+    public UserTotals getUserTotals(int userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_USER_TOTALS,
+                new String[]{KEY_INCOME, KEY_EXPENSE, KEY_INCOME_COUNT, KEY_EXPENSE_COUNT},
+                KEY_USER_ID + " = ?",
+                new String[]{String.valueOf(userId)},
+                null, null, null);
+
+        UserTotals totals = cursor.moveToFirst()
+                ? new UserTotals(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2), cursor.getInt(3))
+                : new UserTotals(0, 0, 0, 0);
+        cursor.close();
+        return totals;
+    }
+
+    // Totals for rows dated [fromDay, toDay]. Whole calendar months inside the range come from
+    // the monthly rollups; only the partial months at either end are summed from rows, by a
+    // range scan of the (user_id, epoch_day) index. A year to date therefore reads at most
+    // one month of rows however long the history is.
+    public UserTotals getUserTotals(int userId, int fromDay, int toDay) {
+        if (fromDay == ALL_DAYS_FROM && toDay == ALL_DAYS_TO) {
+            return getUserTotals(userId);
+        }
+        // A single open end covers every dated row on that side. Clamped to the calendar so
+        // the month arithmetic below cannot overflow; undated rows fall outside it.
+        fromDay = Math.max(fromDay, EpochDay.MIN_DAY);
+        toDay = Math.min(toDay, EpochDay.MAX_DAY);
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        // Income cents, expense cents, income count, expense count
+        long[] totals = new long[4];
+        int firstWholeMonthDay = EpochDay.startOfMonth(fromDay) == fromDay
+                ? fromDay : EpochDay.startOfMonth(EpochDay.startOfMonth(fromDay) + 31);
+        int afterWholeMonthsDay = EpochDay.startOfMonth(toDay + 1);
+
+        if (firstWholeMonthDay < afterWholeMonthsDay) {
+            addRollupTotals(db, userId, EpochDay.toMonthKey(firstWholeMonthDay),
+                    EpochDay.toMonthKey(afterWholeMonthsDay - 1), totals);
+            addRowTotals(db, userId, fromDay, firstWholeMonthDay - 1, totals);
+            addRowTotals(db, userId, afterWholeMonthsDay, toDay, totals);
+        } else {
+            addRowTotals(db, userId, fromDay, toDay, totals);
+        }
+        return new UserTotals(totals[0], totals[1], (int) totals[2], (int) totals[3]);
+    }
+
+    private static void addRollupTotals(SQLiteDatabase db, int userId, int fromMonth, int toMonth, long[] totals) {
+        String rollupQuery = "SELECT " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN " + KEY_TOTAL + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN 0 ELSE " + KEY_TOTAL + " END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN " + KEY_COUNT + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN 0 ELSE " + KEY_COUNT + " END)" +
+                " FROM " + TABLE_MONTHLY_ROLLUPS +
+                " WHERE " + KEY_USER_ID + " = ? AND " + KEY_MONTH + " BETWEEN ? AND ?";
+        addTotals(db, rollupQuery, new String[]{
+                String.valueOf(userId), String.valueOf(fromMonth), String.valueOf(toMonth)}, totals);
+    }
+
+    private static void addRowTotals(SQLiteDatabase db, int userId, int fromDay, int toDay, long[] totals) {
+        if (fromDay > toDay) {
+            return;
+        }
+        String rowQuery = "SELECT " +
+                "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN " + KEY_AMOUNT + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN 0 ELSE -" + KEY_AMOUNT + " END), " +
+                "SUM(" + KEY_AMOUNT + " > 0), " +
+                "SUM(" + KEY_AMOUNT + " <= 0)" +
+                " FROM " + TABLE_EXPENSES +
+                " WHERE " + KEY_USER_ID + " = ? AND " + KEY_EPOCH_DAY + " BETWEEN ? AND ?";
+        addTotals(db, rowQuery, new String[]{
+                String.valueOf(userId), String.valueOf(fromDay), String.valueOf(toDay)}, totals);
+    }
+
+    // Add a single-row aggregate's columns to totals; SUM() over no rows is NULL
+    private static void addTotals(SQLiteDatabase db, String query, String[] args, long[] totals) {
+        Cursor cursor = db.rawQuery(query, args);
+        if (cursor.moveToFirst()) {
+            for (int i = 0; i < totals.length; i++) {
+                if (!cursor.isNull(i)) {
+                    totals[i] += cursor.getLong(i);
+                }
+            }
+        }
+        cursor.close();
+    }
+
+    // Run verifySummaryTables() only if a migration or failed bulk write asked for it since the
+    // last check. Result is true when nothing needed doing or the tables were already correct.
+    public boolean verifySummaryTablesIfRequested() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        if (simpleQueryForLong(db, "SELECT " + KEY_PENDING + " FROM " + TABLE_SUMMARY_CHECK, null) == 0) {
+            return true;
+        }
+        return verifySummaryTables();
+    }
+
+    // Compare the trigger-maintained totals and monthly rollups of every user, row by row, with
+    // GROUP BY aggregates of the expenses, and rebuild both tables if any row disagrees. Drift in
+    // one month or category shows up even when the grand totals still match. Scans every row,
+    // so run it in the background, and only when something asked for it or as maintenance.
+    public boolean verifySummaryTables() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        boolean correct = countMismatches(db, STORED_USER_TOTALS, COMPUTED_USER_TOTALS) == 0
+                && countMismatches(db, STORED_MONTHLY_ROLLUPS, COMPUTED_MONTHLY_ROLLUPS) == 0;
+
+        db.beginTransactionNonExclusive();
+        try {
+            if (!correct) {
+                rebuildUserTotals(db);
+                rebuildMonthlyRollups(db);
+            }
+            db.execSQL("UPDATE " + TABLE_SUMMARY_CHECK + " SET " + KEY_PENDING + " = 0");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (!correct) {
+                writeVersion.incrementAndGet();
+            }
+        }
+        if (correct) {
+            return true;
+        }
+        // Every user's tables were rebuilt, so every screen's totals may have moved
+        ExpenseChange change = new ExpenseChange(ExpenseChange.ALL_USERS);
+        change.markUnbounded();
+        changeBus.publish(change);
+        return false;
+    }
+
+    // Stored summary rows and the same rows computed from the expenses, with matching columns.
+    // Users whose rows were all deleted keep a zeroed totals row, which the rebuild drops.
+    private static final String STORED_USER_TOTALS = "SELECT " + KEY_USER_ID + ", " + KEY_INCOME + ", " +
+            KEY_EXPENSE + ", " + KEY_INCOME_COUNT + ", " + KEY_EXPENSE_COUNT +
+            " FROM " + TABLE_USER_TOTALS +
+            " WHERE " + KEY_INCOME_COUNT + " != 0 OR " + KEY_EXPENSE_COUNT + " != 0" +
+            " OR " + KEY_INCOME + " != 0 OR " + KEY_EXPENSE + " != 0";
+    private static final String COMPUTED_USER_TOTALS = "SELECT " + KEY_USER_ID + ", " +
+            "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN " + KEY_AMOUNT + " ELSE 0 END), " +
+            "SUM(CASE WHEN " + KEY_AMOUNT + " > 0 THEN 0 ELSE -" + KEY_AMOUNT + " END), " +
+            "SUM(" + KEY_AMOUNT + " > 0), " +
+            "SUM(" + KEY_AMOUNT + " <= 0)" +
+            " FROM " + TABLE_EXPENSES +
+            " GROUP BY " + KEY_USER_ID;
+    private static final String STORED_MONTHLY_ROLLUPS = "SELECT " + KEY_USER_ID + ", " + KEY_MONTH + ", " +
+            KEY_CATEGORY_ID + ", " + KEY_IS_INCOME + ", " + KEY_TOTAL + ", " + KEY_COUNT +
+            " FROM " + TABLE_MONTHLY_ROLLUPS;
+    private static final String COMPUTED_MONTHLY_ROLLUPS = "SELECT " + KEY_USER_ID + ", " +
+            MONTH_OF_EPOCH_DAY + " AS m, " + KEY_CATEGORY_ID + ", " + KEY_AMOUNT + " > 0 AS i, " +
+            "SUM(ABS(" + KEY_AMOUNT + ")), COUNT(*)" +
+            " FROM " + TABLE_EXPENSES +
+            " GROUP BY " + KEY_USER_ID + ", m, " + KEY_CATEGORY_ID + ", i";
+
+    // Rows in either query's result that are missing from, or differ in, the other's
+    private static long countMismatches(SQLiteDatabase db, String stored, String computed) {
+        return simpleQueryForLong(db, "SELECT COUNT(*) FROM (" + stored + " EXCEPT " + computed + ")", null)
+                + simpleQueryForLong(db, "SELECT COUNT(*) FROM (" + computed + " EXCEPT " + stored + ")", null);
+    }
+
+    // Ask for verifySummaryTablesIfRequested() to run the full check
+    private static void requestSummaryCheck(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE_SUMMARY_CHECK + " SET " + KEY_PENDING + " = 1");
+    }
+
+    // All-time totals and counts per (category, income/expense), read from the monthly
+    // rollups, plus the largest income and expense from the (user_id, amount) index. The
+    // cost depends on the number of categories and months, not transactions.
+    public ExpenseSummary getSummary(int userId) {
+        // Group on the integer category id first and look names up only for the result rows
+        String summaryQuery = "SELECT c." + KEY_NAME + ", r." + KEY_IS_INCOME + ", r.total_sum, r.count_sum" +
+                " FROM (SELECT " + KEY_CATEGORY_ID + ", " + KEY_IS_INCOME + ", " +
+                "SUM(" + KEY_TOTAL + ") AS total_sum, SUM(" + KEY_COUNT + ") AS count_sum" +
+                " FROM " + TABLE_MONTHLY_ROLLUPS +
+                " WHERE " + KEY_USER_ID + " = ?" +
+                " GROUP BY " + KEY_CATEGORY_ID + ", " + KEY_IS_INCOME + ") r" +
+                " JOIN " + TABLE_CATEGORIES + " c ON c." + KEY_ID + " = r." + KEY_CATEGORY_ID +
+                " ORDER BY r.total_sum DESC";
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] args = new String[]{String.valueOf(userId)};
+        Cursor cursor = db.rawQuery(summaryQuery, args);
+
+        ExpenseSummary summary = new ExpenseSummary();
+        while (cursor.moveToNext()) {
+            summary.addGroup(cursor.getString(0), cursor.getInt(1) == 1,
+                    cursor.getLong(2), cursor.getInt(3));
+        }
+        cursor.close();
+
+        // A lone MIN()/MAX() over an indexed column is answered from the end of the index
+        long largest = simpleQueryForLong(db, "SELECT MAX(" + KEY_AMOUNT + ") FROM " + TABLE_EXPENSES +
+                " WHERE " + KEY_USER_ID + " = ?", args);
+        long smallest = simpleQueryForLong(db, "SELECT MIN(" + KEY_AMOUNT + ") FROM " + TABLE_EXPENSES +
+                " WHERE " + KEY_USER_ID + " = ?", args);
+        summary.setHighest(Math.max(largest, 0), Math.max(-smallest, 0));
+        return summary;
+    }
+
+    // Income and expense totals per calendar month (yyyyMM keys), oldest first
+    public List<PeriodTotal> getMonthlyTotals(int userId, int fromMonth, int toMonth) {
+        return getPeriodTotals(userId, KEY_MONTH, fromMonth, toMonth);
+    }
+
+    // Income and expense totals per calendar year, oldest first
+    public List<PeriodTotal> getYearlyTotals(int userId) {
+        // Undated rows are filed under UNKNOWN_MONTH, which is not a year
+        return getPeriodTotals(userId, KEY_MONTH + " / 100", EpochDay.UNKNOWN_MONTH + 1, Integer.MAX_VALUE);
+    }
+
+    private List<PeriodTotal> getPeriodTotals(int userId, String periodExpression, int fromMonth, int toMonth) {
+        String periodQuery = "SELECT " + periodExpression + " AS period, " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN " + KEY_TOTAL + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN 0 ELSE " + KEY_TOTAL + " END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN " + KEY_COUNT + " ELSE 0 END), " +
+                "SUM(CASE WHEN " + KEY_IS_INCOME + " THEN 0 ELSE " + KEY_COUNT + " END)" +
+                " FROM " + TABLE_MONTHLY_ROLLUPS +
+                " WHERE " + KEY_USER_ID + " = ? AND " + KEY_MONTH + " BETWEEN ? AND ?" +
+                " GROUP BY period ORDER BY period";
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(periodQuery, new String[]{
+                String.valueOf(userId), String.valueOf(fromMonth), String.valueOf(toMonth)});
+
+        List<PeriodTotal> totals = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            totals.add(new PeriodTotal(cursor.getInt(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getInt(3), cursor.getInt(4)));
+        }
+        cursor.close();
+        return totals;
+    }
+
+    private static long simpleQueryForLong(SQLiteDatabase db, String query, String[] args) {
+        Cursor cursor = db.rawQuery(query, args);
+        long value = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        cursor.close();
+        return value;
+    }
 }
\ No newline at end of file
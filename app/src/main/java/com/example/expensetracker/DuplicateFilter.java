@@ -0,0 +1,85 @@
+package com.example.expensetracker;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Spots statement rows that are already stored, so importing overlapping statements (or the
+// same one twice) adds nothing twice. Rows match on day, amount and description, ignoring
+// case and spacing. A row is a duplicate only while the database holds more matching rows
+// than this import has matched so far: a statement with two identical coffees on a day that
+// already has one stored adds just the second.
+final class DuplicateFilter {
+    // Stored rows in the current batch's days, by fingerprint
+    private final Map<Long, Integer> stored = new HashMap<>();
+    // Stored rows already matched, as {day, count}. Kept while their day is in range, so a
+    // day split across two batches doesn't match the same stored row twice.
+    private final Map<Long, int[]> matched = new HashMap<>();
+
+    // Call before addStored() with the days of the next batch of statement rows
+    void beginBatch(int fromDay, int toDay) {
+        stored.clear();
+        Iterator<int[]> iterator = matched.values().iterator();
+        while (iterator.hasNext()) {
+            int day = iterator.next()[0];
+            if (day < fromDay || day > toDay) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void addStored(int epochDay, long amountCents, String description) {
+        long key = fingerprint(epochDay, amountCents, description);
+        Integer count = stored.get(key);
+        stored.put(key, count == null ? 1 : count + 1);
+    }
+
+    // True if the row matches a stored row not matched before; that row is then used up
+    boolean isDuplicate(int epochDay, long amountCents, String description) {
+        long key = fingerprint(epochDay, amountCents, description);
+        Integer available = stored.get(key);
+        if (available == null) {
+            return false;
+        }
+        int[] used = matched.get(key);
+        if (used == null) {
+            matched.put(key, new int[]{epochDay, 1});
+            return true;
+        }
+        if (used[1] < available) {
+            used[1]++;
+            return true;
+        }
+        return false;
+    }
+
+    // 64-bit FNV-1a over the lower-cased description with whitespace runs collapsed, mixed
+    // with the day and amount. Collisions are negligible at the row counts a user has.
+    static long fingerprint(int epochDay, long amountCents, String description) {
+        long hash = 0xcbf29ce484222325L;
+        if (description != null) {
+            boolean space = false;
+            boolean started = false;
+            for (int i = 0; i < description.length(); i++) {
+                char c = description.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = started;
+                    continue;
+                }
+                if (space) {
+                    hash = (hash ^ ' ') * 0x100000001b3L;
+                    space = false;
+                }
+                started = true;
+                hash = (hash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+            }
+        }
+        hash = (hash ^ epochDay) * 0x100000001b3L;
+        hash = (hash ^ amountCents) * 0x100000001b3L;
+        // Final avalanche so nearby days and amounts spread across the map
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.expensetracker;
+
+import java.util.Calendar;
+
+public final class EpochDay {
+    // Stored for dates that cannot be parsed. Outside the range of real days (1970-01-01 is
+    // day 0), so it sorts before every dated row and never falls inside a bounded range.
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    // Month key the monthly rollups file UNKNOWN rows under; below every real yyyyMM key
+    public static final int UNKNOWN_MONTH = 0;
+
+    // The days fromIsoDate() can return, 0000-01-01 to 9999-12-31
+    public static final int MIN_DAY = fromCivil(0, 1, 1);
+    public static final int MAX_DAY = fromCivil(9999, 12, 31);
+
+    private EpochDay() {
+    }
+
+    // Convert a yyyy-MM-dd string into days since 1970-01-01.
+    // Character.digit is used so dates written with a non-ASCII locale still parse.
+    public static int fromIsoDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return UNKNOWN;
+        }
+
+        return fromCivilChecked(parseDigits(date, 0, 4), parseDigits(date, 5, 7), parseDigits(date, 8, 10));
+    }
+
+    // Like fromCivil, but UNKNOWN when the fields are not a real calendar date
+    public static int fromCivilChecked(int year, int month, int day) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return UNKNOWN;
+        }
+        return fromCivil(year, month, day);
+    }
+
+    // Convert days since 1970-01-01 back into a yyyy-MM-dd string
+    public static String toIsoDate(int epochDay) {
+        int civil = toCivil(epochDay);
+        int year = civil / 10000;
+        int month = civil / 100 % 100;
+        int day = civil % 100;
+
+        char[] out = new char[10];
+        writeDigits(out, 0, 4, year);
+        out[4] = '-';
+        writeDigits(out, 5, 2, month);
+        out[7] = '-';
+        writeDigits(out, 8, 2, day);
+        return new String(out);
+    }
+
+    // yyyyMM key of the calendar month containing the day, as used by the monthly rollups
+    public static int toMonthKey(int epochDay) {
+        if (epochDay == UNKNOWN) {
+            return UNKNOWN_MONTH;
+        }
+        return toCivil(epochDay) / 100;
+    }
+
+    // Today in the device's time zone
+    public static int today() {
+        Calendar calendar = Calendar.getInstance();
+        return fromCivil(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    // First day of the calendar month containing the day
+    public static int startOfMonth(int epochDay) {
+        int civil = toCivil(epochDay);
+        return fromCivil(civil / 10000, civil / 100 % 100, 1);
+    }
+
+    // First day of the calendar year containing the day
+    public static int startOfYear(int epochDay) {
+        return fromCivil(toCivil(epochDay) / 10000, 1, 1);
+    }
+
+    // Date as a yyyyMMdd integer, for years 0 to 9999
+    private static int toCivil(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian calendar date
+    public static int fromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int parseDigits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void writeDigits(char[] out, int offset, int width, int value) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
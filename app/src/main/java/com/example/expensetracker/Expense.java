@@ -3,19 +3,23 @@ package com.example.expensetracker;
 public class Expense {
     private int id;
     private int userId;
-    private double amount;
+    // Signed amount in cents: positive is income, negative is an expense
+    private long amountCents;
+    // categories.id; the name below is kept alongside it for display
+    private int categoryId;
     private String category;
     private String description;
     private String date;
+    private int epochDay;
 
     // Constructors
     public Expense() {
     }
 
-    public Expense(int id, int userId, double amount, String category, String description, String date) {
+    public Expense(int id, int userId, long amountCents, String category, String description, String date) {
         this.id = id;
         this.userId = userId;
-        this.amount = amount;
+        this.amountCents = amountCents;
         this.category = category;
         this.description = description;
         this.date = date;
@@ -38,12 +42,25 @@ public class Expense {
         this.userId = userId;
     }
 
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    // For display only; do arithmetic on getAmountCents()
     public double getAmount() {
-        return amount;
+        return Money.toUnits(amountCents);
+    }
+
+    public int getCategoryId() {
+        return categoryId;
     }
 
-    public void setAmount(double amount) {
-        this.amount = amount;
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
     }
 
     public String getCategory() {
@@ -70,14 +87,23 @@ public class Expense {
         this.date = date;
     }
 
+    // Days since 1970-01-01 as stored by the database; used as the paging key
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    public void setEpochDay(int epochDay) {
+        this.epochDay = epochDay;
+    }
+
     // Helper method to check if it's income or expense
     public boolean isIncome() {
-        return amount > 0;
+        return amountCents > 0;
     }
 
     // Helper method to get absolute amount
-    public double getAbsoluteAmount() {
-        return Math.abs(amount);
+    public long getAbsoluteAmountCents() {
+        return Math.abs(amountCents);
     }
 
     @Override
@@ -85,7 +111,8 @@ public class Expense {
         return "Expense{" +
                 "id=" + id +
                 ", userId=" + userId +
-                ", amount=" + amount +
+                ", amountCents=" + amountCents +
+                ", categoryId=" + categoryId +
                 ", category='" + category + '\'' +
                 ", description='" + description + '\'' +
                 ", date='" + date + '\'' +
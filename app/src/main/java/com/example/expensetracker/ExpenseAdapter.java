@@ -9,85 +9,140 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.NumberFormat;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
-public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseViewHolder> {
-    private Context context;
-    private List<Expense> expenseList;
-    private OnExpenseClickListener listener;
-    private NumberFormat currencyFormat;
+// Lists are handed over with submitList(); the diff against the previous list runs on a
+// background thread and only the rows that were added, removed or changed are rebound.
+// Rows arrive pre-formatted and colors are resolved once, so binding allocates nothing.
+public class ExpenseAdapter extends ListAdapter<ExpenseRow, ExpenseAdapter.ExpenseViewHolder> {
+    private static final DiffUtil.ItemCallback<ExpenseRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<ExpenseRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ExpenseRow oldItem, @NonNull ExpenseRow newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ExpenseRow oldItem, @NonNull ExpenseRow newItem) {
+            Expense oldExpense = oldItem.getExpense();
+            Expense newExpense = newItem.getExpense();
+            return oldExpense.getAmountCents() == newExpense.getAmountCents()
+                    && oldExpense.getEpochDay() == newExpense.getEpochDay()
+                    && oldExpense.getCategoryId() == newExpense.getCategoryId()
+                    && Objects.equals(oldExpense.getCategory(), newExpense.getCategory())
+                    && Objects.equals(oldExpense.getDescription(), newExpense.getDescription())
+                    && Objects.equals(oldItem.getDateText(), newItem.getDateText());
+        }
+    };
+
+    private final LayoutInflater inflater;
+    private final OnExpenseClickListener listener;
+    private final Set<Integer> selectedIds = new HashSet<>();
+
+    // Resolved once instead of on every bind
+    private final int incomeColor;
+    private final int expenseColor;
+    private final int cardColor;
+    private final int selectedCardColor;
 
     public interface OnExpenseClickListener {
         void onExpenseClick(int position);
+        void onExpenseLongClick(int position);
         void onExpenseDelete(int position);
     }
 
-    public ExpenseAdapter(Context context, List<Expense> expenseList, OnExpenseClickListener listener) {
-        this.context = context;
-        this.expenseList = expenseList;
+    public ExpenseAdapter(Context context, OnExpenseClickListener listener) {
+        super(DIFF_CALLBACK);
+        this.inflater = LayoutInflater.from(context);
         this.listener = listener;
-        this.currencyFormat = NumberFormat.getCurrencyInstance(Locale.getDefault());
+        this.incomeColor = ContextCompat.getColor(context, android.R.color.holo_green_dark);
+        this.expenseColor = ContextCompat.getColor(context, android.R.color.holo_red_dark);
+        this.cardColor = ContextCompat.getColor(context, android.R.color.white);
+        this.selectedCardColor = ContextCompat.getColor(context, android.R.color.holo_blue_light);
+        // Row ids let RecyclerView keep each row's view across updates
+        setHasStableIds(true);
     }
 
     @NonNull
     @Override
     public ExpenseViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(context).inflate(R.layout.item_expense, parent, false);
-        return new ExpenseViewHolder(view);
+        View view = inflater.inflate(R.layout.item_expense, parent, false);
+        return new ExpenseViewHolder(view, listener);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ExpenseViewHolder holder, int position) {
-        Expense expense = expenseList.get(position);
+        ExpenseRow row = getItem(position);
+        Expense expense = row.getExpense();
 
         // Set data
         holder.textViewCategory.setText(expense.getCategory());
         holder.textViewDescription.setText(expense.getDescription());
-        holder.textViewDate.setText(expense.getDate());
-
-        // Format and set amount
-        String formattedAmount = currencyFormat.format(Math.abs(expense.getAmount()));
-        holder.textViewAmount.setText(formattedAmount);
+        holder.textViewDate.setText(row.getDateText());
+        holder.textViewAmount.setText(row.getAmountText());
 
         // Set colors based on income or expense
-        if (expense.isIncome()) {
-            holder.textViewAmount.setTextColor(context.getResources().getColor(android.R.color.holo_green_dark));
-            holder.imageViewIcon.setImageResource(android.R.drawable.arrow_down_float);
-            holder.imageViewIcon.setColorFilter(context.getResources().getColor(android.R.color.holo_green_dark));
-            holder.cardView.setCardBackgroundColor(context.getResources().getColor(android.R.color.white));
-        } else {
-            holder.textViewAmount.setTextColor(context.getResources().getColor(android.R.color.holo_red_dark));
-            holder.imageViewIcon.setImageResource(android.R.drawable.arrow_up_float);
-            holder.imageViewIcon.setColorFilter(context.getResources().getColor(android.R.color.holo_red_dark));
-            holder.cardView.setCardBackgroundColor(context.getResources().getColor(android.R.color.white));
+        holder.setIncome(row.isIncome(), row.isIncome() ? incomeColor : expenseColor);
+
+        // Highlight rows picked for multi-select delete
+        holder.setCardColor(selectedIds.contains(row.getId()) ? selectedCardColor : cardColor);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    // Positions passed to OnExpenseClickListener refer to the list shown, which can lag
+    // behind the latest submitList() while a diff is running
+    public Expense getExpense(int position) {
+        return getItem(position).getExpense();
+    }
+
+    // Selection for multi-select delete, tracked by expense id so it survives paging
+    public void toggleSelection(int position) {
+        int id = getItem(position).getId();
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
         }
+        notifyItemChanged(position);
+    }
 
-        // Click listeners
-        holder.cardView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                listener.onExpenseClick(holder.getAdapterPosition());
-            }
-        });
+    public int getSelectedCount() {
+        return selectedIds.size();
+    }
 
-        holder.buttonDelete.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                listener.onExpenseDelete(holder.getAdapterPosition());
-            }
-        });
+    public long[] getSelectedIds() {
+        long[] ids = new long[selectedIds.size()];
+        int i = 0;
+        for (int id : selectedIds) {
+            ids[i++] = id;
+        }
+        return ids;
     }
 
-    @Override
-    public int getItemCount() {
-        return expenseList.size();
+    public void clearSelection() {
+        // Rebind only the highlighted rows
+        List<ExpenseRow> shown = getCurrentList();
+        for (int i = 0; i < shown.size(); i++) {
+            if (selectedIds.contains(shown.get(i).getId())) {
+                notifyItemChanged(i);
+            }
+        }
+        selectedIds.clear();
     }
 
-    public static class ExpenseViewHolder extends RecyclerView.ViewHolder {
+    // Listeners are attached once here and look up the row's current position when fired
+    public static class ExpenseViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener {
+        private final OnExpenseClickListener listener;
         CardView cardView;
         ImageView imageViewIcon;
         TextView textViewCategory;
@@ -96,8 +151,13 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
         TextView textViewDate;
         ImageButton buttonDelete;
 
-        public ExpenseViewHolder(@NonNull View itemView) {
+        // What the views currently show, so setters that allocate run only on a change
+        private int boundKind = -1;
+        private int boundCardColor;
+
+        public ExpenseViewHolder(@NonNull View itemView, OnExpenseClickListener listener) {
             super(itemView);
+            this.listener = listener;
             cardView = itemView.findViewById(R.id.card_view_expense_item);
             imageViewIcon = itemView.findViewById(R.id.image_view_icon);
             textViewCategory = itemView.findViewById(R.id.text_view_category);
@@ -105,6 +165,51 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
             textViewAmount = itemView.findViewById(R.id.text_view_amount);
             textViewDate = itemView.findViewById(R.id.text_view_date);
             buttonDelete = itemView.findViewById(R.id.button_delete);
+
+            cardView.setOnClickListener(this);
+            cardView.setOnLongClickListener(this);
+            buttonDelete.setOnClickListener(this);
+        }
+
+        void setIncome(boolean income, int color) {
+            int kind = income ? Category.KIND_INCOME : Category.KIND_EXPENSE;
+            if (kind == boundKind) {
+                return;
+            }
+            boundKind = kind;
+            textViewAmount.setTextColor(color);
+            imageViewIcon.setImageResource(income ? android.R.drawable.arrow_down_float : android.R.drawable.arrow_up_float);
+            imageViewIcon.setColorFilter(color);
+        }
+
+        void setCardColor(int color) {
+            if (color == boundCardColor) {
+                return;
+            }
+            boundCardColor = color;
+            cardView.setCardBackgroundColor(color);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            if (v == buttonDelete) {
+                listener.onExpenseDelete(position);
+            } else {
+                listener.onExpenseClick(position);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View v) {
+            int position = getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onExpenseLongClick(position);
+            }
+            return true;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+package com.example.expensetracker;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+// What a write changed: the user, the rows by id, and the months and categories they fall in.
+// Writes too large to list row by row (bulk inserts, clearing a user's history) are marked
+// unbounded, and listeners should treat them as touching every row of the user.
+public class ExpenseChange {
+    // Used for changes that are not tied to one user, such as renaming a category
+    public static final int ALL_USERS = -1;
+
+    public static final int INSERTED = 0;
+    public static final int UPDATED = 1;
+    public static final int DELETED = 2;
+
+    // Past this many rows a change stops listing ids and becomes unbounded
+    static final int MAX_TRACKED_ROWS = 256;
+
+    private final int userId;
+    private final Set<Integer> insertedIds = new HashSet<>();
+    private final Set<Integer> updatedIds = new HashSet<>();
+    private final Set<Integer> deletedIds = new HashSet<>();
+    private final Set<Integer> months = new HashSet<>();
+    private final Set<Integer> categoryIds = new HashSet<>();
+    private boolean categoriesRenamed;
+    private boolean unbounded;
+
+    public ExpenseChange(int userId) {
+        this.userId = userId;
+    }
+
+    // kind is INSERTED, UPDATED or DELETED
+    void addRow(int kind, int id, int epochDay, int categoryId) {
+        if (unbounded) {
+            return;
+        }
+        if (insertedIds.size() + updatedIds.size() + deletedIds.size() >= MAX_TRACKED_ROWS) {
+            markUnbounded();
+            return;
+        }
+        switch (kind) {
+            case INSERTED:
+                insertedIds.add(id);
+                break;
+            case UPDATED:
+                updatedIds.add(id);
+                break;
+            case DELETED:
+                deletedIds.add(id);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown change kind " + kind);
+        }
+        months.add(EpochDay.toMonthKey(epochDay));
+        categoryIds.add(categoryId);
+    }
+
+    // A change to the category itself rather than to any row
+    void addRenamedCategory(int categoryId) {
+        categoriesRenamed = true;
+        categoryIds.add(categoryId);
+    }
+
+    void markUnbounded() {
+        unbounded = true;
+        insertedIds.clear();
+        updatedIds.clear();
+        deletedIds.clear();
+        months.clear();
+        categoryIds.clear();
+    }
+
+    // Fold a later change for the same user into this one
+    void merge(ExpenseChange other) {
+        if (other.userId != userId) {
+            throw new IllegalArgumentException("Cannot merge changes for different users");
+        }
+        categoriesRenamed |= other.categoriesRenamed;
+        if (unbounded || other.unbounded) {
+            markUnbounded();
+            return;
+        }
+        insertedIds.addAll(other.insertedIds);
+        updatedIds.addAll(other.updatedIds);
+        deletedIds.addAll(other.deletedIds);
+        months.addAll(other.months);
+        categoryIds.addAll(other.categoryIds);
+        if (insertedIds.size() + updatedIds.size() + deletedIds.size() > MAX_TRACKED_ROWS) {
+            markUnbounded();
+        }
+    }
+
+    public boolean isEmpty() {
+        return !hasRowChanges() && !categoriesRenamed;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public boolean affectsUser(int userId) {
+        return this.userId == ALL_USERS || this.userId == userId;
+    }
+
+    public boolean isUnbounded() {
+        return unbounded;
+    }
+
+    // False for changes that only renamed categories, which leave amounts and totals as they were
+    public boolean hasRowChanges() {
+        return unbounded || !insertedIds.isEmpty() || !updatedIds.isEmpty() || !deletedIds.isEmpty();
+    }
+
+    // True when the change only removed rows, all of which are listed in getDeletedIds()
+    public boolean isDeleteOnly() {
+        return !unbounded && !categoriesRenamed && insertedIds.isEmpty() && updatedIds.isEmpty()
+                && !deletedIds.isEmpty();
+    }
+
+    public boolean hasRenamedCategories() {
+        return categoriesRenamed;
+    }
+
+    // True if any changed row falls in the yyyyMM months [fromMonthKey, toMonthKey]
+    public boolean affectsMonths(int fromMonthKey, int toMonthKey) {
+        if (unbounded) {
+            return true;
+        }
+        for (int month : months) {
+            if (month >= fromMonthKey && month <= toMonthKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean affectsCategory(int categoryId) {
+        return unbounded || categoryIds.contains(categoryId);
+    }
+
+    public Set<Integer> getInsertedIds() {
+        return Collections.unmodifiableSet(insertedIds);
+    }
+
+    public Set<Integer> getUpdatedIds() {
+        return Collections.unmodifiableSet(updatedIds);
+    }
+
+    public Set<Integer> getDeletedIds() {
+        return Collections.unmodifiableSet(deletedIds);
+    }
+}
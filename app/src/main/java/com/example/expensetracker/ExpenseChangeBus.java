@@ -0,0 +1,71 @@
+package com.example.expensetracker;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Delivers the ExpenseChanges published by DatabaseHelper to listeners on the main thread.
+// Changes published within COALESCE_DELAY_MS of the first are merged per user, so a burst
+// of writes reaches each screen as a single change.
+public class ExpenseChangeBus {
+    private static final long COALESCE_DELAY_MS = 100;
+
+    public interface Listener {
+        void onExpensesChanged(ExpenseChange change);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Guarded by itself; keyed by user id, or ALL_USERS
+    private final Map<Integer, ExpenseChange> pending = new LinkedHashMap<>();
+    private boolean dispatchScheduled;
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            List<ExpenseChange> changes;
+            synchronized (pending) {
+                changes = new ArrayList<>(pending.values());
+                pending.clear();
+                dispatchScheduled = false;
+            }
+            for (ExpenseChange change : changes) {
+                for (Listener listener : listeners) {
+                    listener.onExpensesChanged(change);
+                }
+            }
+        }
+    };
+
+    public void register(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Called from any thread once the write is committed; the bus takes ownership of change
+    void publish(ExpenseChange change) {
+        if (change.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            ExpenseChange existing = pending.get(change.getUserId());
+            if (existing == null) {
+                pending.put(change.getUserId(), change);
+            } else {
+                existing.merge(change);
+            }
+            if (!dispatchScheduled) {
+                dispatchScheduled = true;
+                mainHandler.postDelayed(dispatch, COALESCE_DELAY_MS);
+            }
+        }
+    }
+}
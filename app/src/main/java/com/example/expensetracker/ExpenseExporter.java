@@ -0,0 +1,176 @@
+package com.example.expensetracker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+// Writes transactions one at a time as CSV or JSON Lines, optionally gzipped. Nothing is kept
+// per row beyond a reused line buffer, so memory stays flat however many rows pass through.
+// cancel() may be called from any thread; the export loop checks it between rows.
+public class ExpenseExporter {
+    public static final int CSV = 0;
+    public static final int JSON_LINES = 1;
+
+    private static final String CSV_HEADER = "id,date,amount,category,description";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int format;
+    private final boolean gzip;
+    private final StringBuilder line = new StringBuilder(256);
+    private Writer writer;
+    private volatile boolean cancelled;
+
+    public ExpenseExporter(int format, boolean gzip) {
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    public String getMimeType() {
+        if (gzip) {
+            return "application/gzip";
+        }
+        return format == CSV ? "text/csv" : "application/x-ndjson";
+    }
+
+    public String getFileName() {
+        return "transactions" + (format == CSV ? ".csv" : ".jsonl") + (gzip ? ".gz" : "");
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Takes ownership of out; close() closes it
+    public void open(OutputStream out) throws IOException {
+        OutputStream stream;
+        try {
+            stream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+    }
+
+    public void write(Expense expense) throws IOException {
+        line.setLength(0);
+        String date = expense.getEpochDay() != EpochDay.UNKNOWN
+                ? EpochDay.toIsoDate(expense.getEpochDay()) : expense.getDate();
+        if (format == CSV) {
+            line.append(expense.getId()).append(',');
+            appendCsv(line, date);
+            line.append(',');
+            appendAmount(line, expense.getAmountCents());
+            line.append(',');
+            appendCsv(line, expense.getCategory());
+            line.append(',');
+            appendCsv(line, expense.getDescription());
+        } else {
+            line.append("{\"id\":").append(expense.getId());
+            line.append(",\"date\":");
+            appendJson(line, date);
+            line.append(",\"amount\":");
+            appendAmount(line, expense.getAmountCents());
+            line.append(",\"category\":");
+            appendJson(line, expense.getCategory());
+            line.append(",\"description\":");
+            appendJson(line, expense.getDescription());
+            line.append('}');
+        }
+        line.append('\n');
+        writer.append(line);
+    }
+
+    // Flushes the buffers and, when gzipped, writes the gzip trailer
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    // Exact decimal text such as -12.05; no rounding through double
+    static void appendAmount(StringBuilder out, long cents) {
+        long units = cents / Money.CENTS_PER_UNIT;
+        int rest = (int) Math.abs(cents % Money.CENTS_PER_UNIT);
+        if (cents < 0 && units == 0) {
+            out.append('-');
+        }
+        out.append(units).append('.');
+        if (rest < 10) {
+            out.append('0');
+        }
+        out.append(rest);
+    }
+
+    // RFC 4180: quote fields holding a separator, quote or line break, doubling inner quotes
+    static void appendCsv(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    static void appendJson(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
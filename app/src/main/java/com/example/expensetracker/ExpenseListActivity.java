@@ -4,24 +4,68 @@ import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ExpenseListActivity extends AppCompatActivity implements ExpenseAdapter.OnExpenseClickListener {
+    // Rows fetched per query, and how close to the end of the list the next page is requested
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 15;
+    // Rows kept loaded around the viewport; pages further away are dropped and fetched again
+    // by their keys when the user scrolls back, so memory doesn't grow with scroll depth
+    private static final int MAX_LOADED_ROWS = 5 * PAGE_SIZE;
+    // Wait for a pause in typing before running a search
+    private static final long SEARCH_DELAY_MS = 300;
+
     private RecyclerView recyclerViewExpenses;
     private ExpenseAdapter expenseAdapter;
     private LinearLayout layoutEmptyState;
-    private ImageButton buttonBack;
-    private DatabaseHelper databaseHelper;
+    private ImageButton buttonBack, buttonDeleteSelected;
+    private TextView textViewTitle, textViewEmptyTitle, textViewEmptyMessage;
+    private EditText editTextSearch;
+    private ExpenseRepository expenseRepository;
     private int currentUserId;
-    private List<Expense> expenseList;
+    // The loaded window of rows, newest first
+    private List<ExpenseRow> expenseList = new ArrayList<>();
+    private LinearLayoutManager layoutManager;
+    // Whether older rows follow the window, and newer rows were dropped from before it
+    private boolean hasMorePages;
+    private boolean hasNewerPages;
+    private boolean loadingPage;
+    // Bumped on every reload so pages requested for an older list are ignored
+    private int listGeneration;
+    // Set when rows change while another screen is in front; the list reloads on return
+    private boolean resumed;
+    private boolean listStale;
+    // Search text of the loaded pages; empty lists every transaction. Only changed when the
+    // debounced search runs, so pages requested before then still continue the old results.
+    private String searchText = "";
+    // Text typed into the search box, waiting for a pause in typing
+    private String pendingSearchText = "";
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            searchText = pendingSearchText;
+            loadExpenses();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -31,8 +75,8 @@ public class ExpenseListActivity extends AppCompatActivity implements ExpenseAda
         // Get User ID from Intent
         currentUserId = getIntent().getIntExtra("USER_ID", 1);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs off the main thread through the repository
+        expenseRepository = new ExpenseRepository(this);
 
         // Initialize Views
         initializeViews();
@@ -44,50 +88,376 @@ public class ExpenseListActivity extends AppCompatActivity implements ExpenseAda
         setupListeners();
     }
 
+    private void applyChange(ExpenseChange change) {
+        if (change.isDeleteOnly()) {
+            // Removing known ids needs no query, so apply it even while hidden
+            removeFromList(change.getDeletedIds());
+        } else if (resumed) {
+            loadExpenses();
+        } else {
+            listStale = true;
+        }
+    }
+
     private void initializeViews() {
         recyclerViewExpenses = findViewById(R.id.recycler_view_expenses);
         layoutEmptyState = findViewById(R.id.layout_empty_state);
         buttonBack = findViewById(R.id.button_back);
+        buttonDeleteSelected = findViewById(R.id.button_delete_selected);
+        textViewTitle = findViewById(R.id.text_view_title);
+        textViewEmptyTitle = findViewById(R.id.text_view_empty_title);
+        textViewEmptyMessage = findViewById(R.id.text_view_empty_message);
+        editTextSearch = findViewById(R.id.edit_text_search);
 
         // Setup RecyclerView
-        recyclerViewExpenses.setLayoutManager(new LinearLayoutManager(this));
+        layoutManager = new LinearLayoutManager(this);
+        recyclerViewExpenses.setLayoutManager(layoutManager);
         recyclerViewExpenses.setHasFixedSize(true);
+
+        // One adapter for the screen's lifetime; new rows arrive through submitList()
+        expenseAdapter = new ExpenseAdapter(this, this);
+        recyclerViewExpenses.setAdapter(expenseAdapter);
     }
 
     private void loadExpenses() {
-        expenseList = databaseHelper.getAllExpenses(currentUserId);
+        // Re-page from the newest row, one page at a time, however far the list was scrolled,
+        // so a reload costs one page and memory stays bounded. The diff keeps unchanged rows
+        // in place and later pages load again as the user scrolls.
+        final int generation = ++listGeneration;
+        loadingPage = true;
+        requestPage(DatabaseHelper.FIRST_PAGE_DAY, DatabaseHelper.FIRST_PAGE_ID, PAGE_SIZE,
+                new ExpenseRepository.Callback<List<ExpenseRow>>() {
+                    @Override
+                    public void onResult(List<ExpenseRow> page) {
+                        if (generation == listGeneration) {
+                            loadingPage = false;
+                            showFirstPage(page);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        ExpenseRepository.Callback.super.onError(e);
+                        if (generation == listGeneration) {
+                            // Nothing is left to scroll, so try again when the screen returns
+                            listStale = true;
+                            onPageFailed();
+                        }
+                    }
+                });
+    }
+
+    private void showFirstPage(List<ExpenseRow> page) {
+        // Pages may be shared with the repository's query cache, so keep a private copy to append to
+        expenseList = new ArrayList<>(page);
+        hasMorePages = expenseList.size() == PAGE_SIZE;
+        hasNewerPages = false;
 
         if (expenseList.isEmpty()) {
             recyclerViewExpenses.setVisibility(View.GONE);
             layoutEmptyState.setVisibility(View.VISIBLE);
+            if (searchText.isEmpty()) {
+                textViewEmptyTitle.setText("No Transactions Yet");
+                textViewEmptyMessage.setText("Add your first transaction to get started");
+            } else {
+                textViewEmptyTitle.setText("No Matches");
+                textViewEmptyMessage.setText("No transactions match \"" + searchText + "\"");
+            }
         } else {
             recyclerViewExpenses.setVisibility(View.VISIBLE);
             layoutEmptyState.setVisibility(View.GONE);
+        }
+        // The adapter keeps its own copy; the diff against it runs in the background
+        expenseAdapter.submitList(new ArrayList<>(expenseList));
+        updateSelectionUi();
+    }
+
+    private void loadNextPage() {
+        // Continue after the (day, id) key of the last row already shown
+        final int generation = listGeneration;
+        Expense last = expenseList.get(expenseList.size() - 1).getExpense();
+        loadingPage = true;
+        requestPage(last.getEpochDay(), last.getId(), PAGE_SIZE,
+                new ExpenseRepository.Callback<List<ExpenseRow>>() {
+                    @Override
+                    public void onResult(List<ExpenseRow> page) {
+                        if (generation != listGeneration) {
+                            return;
+                        }
+                        loadingPage = false;
+                        hasMorePages = page.size() == PAGE_SIZE;
+
+                        if (page.isEmpty()) {
+                            return;
+                        }
+                        expenseList.addAll(page);
+                        // Drop the newest rows once the window is full; they are above the viewport
+                        if (expenseList.size() > MAX_LOADED_ROWS) {
+                            expenseList = new ArrayList<>(expenseList.subList(
+                                    expenseList.size() - MAX_LOADED_ROWS, expenseList.size()));
+                            hasNewerPages = true;
+                        }
+                        expenseAdapter.submitList(new ArrayList<>(expenseList));
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        ExpenseRepository.Callback.super.onError(e);
+                        if (generation == listGeneration) {
+                            onPageFailed();
+                        }
+                    }
+                });
+    }
+
+    private void loadNewerPage() {
+        // Fetch the rows just before the (day, id) key of the first row still loaded
+        final int generation = listGeneration;
+        Expense first = expenseList.get(0).getExpense();
+        loadingPage = true;
+        requestNewerPage(first.getEpochDay(), first.getId(), PAGE_SIZE,
+                new ExpenseRepository.Callback<List<ExpenseRow>>() {
+                    @Override
+                    public void onResult(List<ExpenseRow> page) {
+                        if (generation != listGeneration) {
+                            return;
+                        }
+                        loadingPage = false;
+                        hasNewerPages = page.size() == PAGE_SIZE;
+                        if (page.isEmpty()) {
+                            return;
+                        }
+
+                        List<ExpenseRow> window = new ArrayList<>(Math.min(page.size() + expenseList.size(),
+                                MAX_LOADED_ROWS));
+                        window.addAll(page);
+                        // Drop the oldest rows once the window is full; they are below the viewport
+                        int keep = Math.min(expenseList.size(), MAX_LOADED_ROWS - page.size());
+                        window.addAll(expenseList.subList(0, keep));
+                        if (keep < expenseList.size()) {
+                            hasMorePages = true;
+                        }
+                        expenseList = window;
+                        submitKeepingPosition(page.size());
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        ExpenseRepository.Callback.super.onError(e);
+                        if (generation == listGeneration) {
+                            onPageFailed();
+                        }
+                    }
+                });
+    }
+
+    // The list stays as it was; scrolling on towards the missing rows asks for them again
+    private void onPageFailed() {
+        loadingPage = false;
+        Toast.makeText(this, "Couldn't load transactions", Toast.LENGTH_SHORT).show();
+    }
+
+    // Rows inserted above the viewport would otherwise push the visible rows down
+    private void submitKeepingPosition(final int insertedAbove) {
+        final int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        View firstView = layoutManager.findViewByPosition(firstVisible);
+        final int offset = firstView == null ? 0 : firstView.getTop();
+        expenseAdapter.submitList(new ArrayList<>(expenseList), new Runnable() {
+            @Override
+            public void run() {
+                if (firstVisible != RecyclerView.NO_POSITION) {
+                    layoutManager.scrollToPositionWithOffset(firstVisible + insertedAbove, offset);
+                }
+            }
+        });
+    }
+
+    // Page through the full-text matches while searching, otherwise through every transaction
+    private void requestPage(int afterDay, int afterId, int limit,
+                             ExpenseRepository.Callback<List<ExpenseRow>> callback) {
+        if (searchText.isEmpty()) {
+            expenseRepository.getExpensesPage(currentUserId, afterDay, afterId, limit, callback);
+        } else {
+            expenseRepository.searchExpensesPage(currentUserId, searchText, afterDay, afterId, limit, callback);
+        }
+    }
+
+    private void requestNewerPage(int beforeDay, int beforeId, int limit,
+                                  ExpenseRepository.Callback<List<ExpenseRow>> callback) {
+        if (searchText.isEmpty()) {
+            expenseRepository.getNewerExpensesPage(currentUserId, beforeDay, beforeId, limit, callback);
+        } else {
+            expenseRepository.searchNewerExpensesPage(currentUserId, searchText, beforeDay, beforeId, limit,
+                    callback);
+        }
+    }
+
+    private void removeFromList(long[] ids) {
+        Set<Integer> deletedIds = new HashSet<>();
+        for (long id : ids) {
+            deletedIds.add((int) id);
+        }
+        removeFromList(deletedIds);
+    }
+
+    // Drop deleted rows from the loaded pages; the diff removes just those rows on screen
+    private void removeFromList(Set<Integer> deletedIds) {
+        List<ExpenseRow> remaining = new ArrayList<>(expenseList.size());
+        for (ExpenseRow row : expenseList) {
+            if (!deletedIds.contains(row.getId())) {
+                remaining.add(row);
+            }
+        }
+        // Our own deletes arrive twice: from the callback and again from the change bus
+        if (remaining.size() == expenseList.size()) {
+            return;
+        }
+        expenseList = remaining;
 
-            expenseAdapter = new ExpenseAdapter(this, expenseList, this);
-            recyclerViewExpenses.setAdapter(expenseAdapter);
+        // Fetch the next page, or show the empty state, once the loaded rows are gone
+        if (expenseList.isEmpty()) {
+            loadExpenses();
+        } else {
+            expenseAdapter.submitList(new ArrayList<>(expenseList));
         }
     }
 
     private void setupListeners() {
+        // Follow writes made anywhere in the app instead of reloading on every return
+        expenseRepository.addChangeListener(currentUserId, new ExpenseChangeBus.Listener() {
+            @Override
+            public void onExpensesChanged(ExpenseChange change) {
+                applyChange(change);
+            }
+        });
+
         buttonBack.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 finish();
             }
         });
+
+        buttonDeleteSelected.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                confirmDeleteSelected();
+            }
+        });
+
+        // Restart the search once typing pauses; each keystroke pushes it back
+        editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                pendingSearchText = s.toString().trim();
+                searchHandler.removeCallbacks(searchRunnable);
+                // Typing back to the loaded search needs no reload
+                if (!pendingSearchText.equals(searchText)) {
+                    searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+                }
+            }
+        });
+
+        // Load more rows as the user nears either end of the loaded window
+        recyclerViewExpenses.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (loadingPage || expenseList.isEmpty()) {
+                    return;
+                }
+                if (dy > 0 && hasMorePages) {
+                    int lastVisible = layoutManager.findLastVisibleItemPosition();
+                    if (lastVisible >= expenseList.size() - PREFETCH_DISTANCE) {
+                        loadNextPage();
+                    }
+                } else if (dy < 0 && hasNewerPages) {
+                    int firstVisible = layoutManager.findFirstVisibleItemPosition();
+                    if (firstVisible != RecyclerView.NO_POSITION && firstVisible <= PREFETCH_DISTANCE) {
+                        loadNewerPage();
+                    }
+                }
+            }
+        });
     }
 
     @Override
     public void onExpenseClick(int position) {
+        // While selecting, a tap adds or removes the row from the selection
+        if (expenseAdapter.getSelectedCount() > 0) {
+            expenseAdapter.toggleSelection(position);
+            updateSelectionUi();
+            return;
+        }
+
         // Navigate to edit expense (future feature)
-        Expense expense = expenseList.get(position);
         Toast.makeText(this, "Edit feature coming soon!", Toast.LENGTH_SHORT).show();
     }
 
+    @Override
+    public void onExpenseLongClick(int position) {
+        expenseAdapter.toggleSelection(position);
+        updateSelectionUi();
+    }
+
+    private void updateSelectionUi() {
+        int selectedCount = expenseAdapter.getSelectedCount();
+        if (selectedCount > 0) {
+            textViewTitle.setText(selectedCount + " selected");
+            buttonDeleteSelected.setVisibility(View.VISIBLE);
+        } else {
+            textViewTitle.setText("Transactions");
+            buttonDeleteSelected.setVisibility(View.GONE);
+        }
+    }
+
+    private void confirmDeleteSelected() {
+        final long[] ids = expenseAdapter.getSelectedIds();
+
+        new AlertDialog.Builder(this)
+                .setTitle("Delete Transactions")
+                .setMessage("Are you sure you want to delete " + ids.length + " transactions?")
+                .setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        // One transactional delete for the whole selection
+                        expenseRepository.deleteExpenses(ids, new ExpenseRepository.Callback<Integer>() {
+                            @Override
+                            public void onResult(Integer deleted) {
+                                expenseAdapter.clearSelection();
+                                updateSelectionUi();
+                                removeFromList(ids);
+
+                                Toast.makeText(ExpenseListActivity.this, deleted + " transactions deleted", Toast.LENGTH_SHORT).show();
+                            }
+                        });
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    @Override
+    public void onBackPressed() {
+        // Leave selection mode before leaving the screen
+        if (expenseAdapter.getSelectedCount() > 0) {
+            expenseAdapter.clearSelection();
+            updateSelectionUi();
+            return;
+        }
+        super.onBackPressed();
+    }
+
     @Override
     public void onExpenseDelete(int position) {
-        final Expense expense = expenseList.get(position);
+        final Expense expense = expenseAdapter.getExpense(position);
 
         // Show confirmation dialog
         new AlertDialog.Builder(this)
@@ -96,21 +466,15 @@ public class ExpenseListActivity extends AppCompatActivity implements ExpenseAda
                 .setPositiveButton("Delete", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        // Delete from database
-                        databaseHelper.deleteExpense(expense.getId());
-
-                        // Remove from list and update adapter
-                        expenseList.remove(position);
-                        expenseAdapter.notifyItemRemoved(position);
-                        expenseAdapter.notifyItemRangeChanged(position, expenseList.size());
-
-                        // Show empty state if list is empty
-                        if (expenseList.isEmpty()) {
-                            recyclerViewExpenses.setVisibility(View.GONE);
-                            layoutEmptyState.setVisibility(View.VISIBLE);
-                        }
+                        // Delete from database, then remove the row by id in case the list moved meanwhile
+                        expenseRepository.deleteExpense(expense.getId(), new ExpenseRepository.Callback<Void>() {
+                            @Override
+                            public void onResult(Void result) {
+                                removeFromList(new long[]{expense.getId()});
 
-                        Toast.makeText(ExpenseListActivity.this, "Transaction deleted", Toast.LENGTH_SHORT).show();
+                                Toast.makeText(ExpenseListActivity.this, "Transaction deleted", Toast.LENGTH_SHORT).show();
+                            }
+                        });
                     }
                 })
                 .setNegativeButton("Cancel", null)
@@ -120,7 +484,25 @@ public class ExpenseListActivity extends AppCompatActivity implements ExpenseAda
     @Override
     protected void onResume() {
         super.onResume();
-        // Reload expenses when returning to this activity
-        loadExpenses();
+        resumed = true;
+        // Reload only if rows were written while this screen was hidden
+        if (listStale) {
+            listStale = false;
+            loadExpenses();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
+        // Drop any database work still queued for this screen
+        expenseRepository.close();
     }
 }
\ No newline at end of file
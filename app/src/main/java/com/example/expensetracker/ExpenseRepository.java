@@ -0,0 +1,548 @@
+package com.example.expensetracker;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs DatabaseHelper calls on a background pool and delivers results on the main thread.
+// Create one per screen and close() it in onDestroy so pending work is dropped with the screen.
+public class ExpenseRepository {
+    private static final String TAG = "ExpenseRepository";
+
+    // WAL lets a reader overlap a writer; more threads than that only contend on SQLite
+    private static final int THREAD_COUNT = 2;
+
+    private static final ExecutorService EXECUTOR = newExecutor(THREAD_COUNT, "expense-db-");
+
+    // Exports and imports can run for minutes, so they queue here, one at a time, instead of
+    // holding the threads every screen's queries run on
+    private static final ExecutorService JOB_EXECUTOR = newExecutor(1, "expense-job-");
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    // Rows between progress updates for long-running exports; each one is a message to the
+    // main thread, so this is coarser than DatabaseHelper's interval
+    private static final int PROGRESS_INTERVAL = 5000;
+
+    // Read results shared by every screen, keyed by user and query shape. Entries are tagged
+    // with DatabaseHelper's write version, so any write makes all of them stale at once and
+    // moving between screens without writing costs no database reads.
+    private static final int QUERY_CACHE_SIZE = 32;
+    private static final QueryCache QUERY_CACHE = new QueryCache(QUERY_CACHE_SIZE);
+
+    // List and search pages have their own, smaller cache: scrolling and typing produce many
+    // keys, and they must not evict the snapshot and report results that are costly to rebuild
+    private static final int PAGE_CACHE_SIZE = 8;
+    private static final QueryCache PAGE_CACHE = new QueryCache(PAGE_CACHE_SIZE);
+
+    // Snapshot loads are serialised so two screens asking at once share a single scan
+    private static final Object SNAPSHOT_LOAD_LOCK = new Object();
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        // Called on the main thread when the database call throws
+        default void onError(Exception e) {
+            Log.e(TAG, "Database operation failed", e);
+        }
+    }
+
+    private final DatabaseHelper databaseHelper;
+    private final Set<FutureTask<?>> pendingTasks = new HashSet<>();
+    private final List<ExpenseChangeBus.Listener> changeListeners = new ArrayList<>();
+    private volatile boolean closed;
+
+    public ExpenseRepository(Context context) {
+        this(DatabaseHelper.getInstance(context));
+    }
+
+    // For instrumented tests running against a throwaway database
+    ExpenseRepository(DatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    public void getSummary(final int userId, Callback<ExpenseSummary> callback) {
+        executeCached("summary:" + userId, new Callable<ExpenseSummary>() {
+            @Override
+            public ExpenseSummary call() {
+                return databaseHelper.getSummary(userId);
+            }
+        }, callback);
+    }
+
+    // Report statistics and chart datasets for rows dated [fromDay, toDay], computed from the
+    // shared snapshot. Pass DatabaseHelper.ALL_DAYS_FROM and ALL_DAYS_TO for all time.
+    public void getReportCharts(final int userId, final int fromDay, final int toDay,
+                                Callback<ReportCharts> callback) {
+        executeCached("reportCharts:" + userId + ":" + fromDay + ":" + toDay, new Callable<ReportCharts>() {
+            @Override
+            public ReportCharts call() throws Exception {
+                return ReportCharts.build(loadSnapshot(userId).summarize(fromDay, toDay));
+            }
+        }, callback);
+    }
+
+    // Spending per bucket for rows dated [fromDay, toDay], downsampled to at most maxPoints
+    public void getSpendingTrend(final int userId, final int fromDay, final int toDay, final int bucket,
+                                 final int maxPoints, Callback<TrendSeries> callback) {
+        String key = "trend:" + userId + ":" + fromDay + ":" + toDay + ":" + bucket + ":" + maxPoints;
+        executeCached(key, new Callable<TrendSeries>() {
+            @Override
+            public TrendSeries call() throws Exception {
+                return TrendSeries.fromSnapshot(loadSnapshot(userId), fromDay, toDay, bucket).downsample(maxPoints);
+            }
+        }, callback);
+    }
+
+    // Totals for rows dated [fromDay, toDay]; all time reads the trigger-maintained totals row
+    public void getUserTotals(final int userId, final int fromDay, final int toDay, Callback<UserTotals> callback) {
+        executeCached("totals:" + userId + ":" + fromDay + ":" + toDay, new Callable<UserTotals>() {
+            @Override
+            public UserTotals call() {
+                return databaseHelper.getUserTotals(userId, fromDay, toDay);
+            }
+        }, callback);
+    }
+
+    // Maintenance: check every user's totals and rollups against the raw rows, rebuilding them
+    // if any differ. Result is true when they were already correct.
+    public void verifySummaryTables(Callback<Boolean> callback) {
+        execute(JOB_EXECUTOR, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                // A rebuild bumps the write version, which also drops cached results
+                return databaseHelper.verifySummaryTables();
+            }
+        }, callback);
+    }
+
+    // The same check, run only when a migration or failed bulk write has asked for it
+    public void verifySummaryTablesIfRequested(Callback<Boolean> callback) {
+        execute(JOB_EXECUTOR, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return databaseHelper.verifySummaryTablesIfRequested();
+            }
+        }, callback);
+    }
+
+    public void getMonthlyTotals(final int userId, final int fromMonth, final int toMonth,
+                                 Callback<List<PeriodTotal>> callback) {
+        executeCached("monthly:" + userId + ":" + fromMonth + ":" + toMonth, new Callable<List<PeriodTotal>>() {
+            @Override
+            public List<PeriodTotal> call() {
+                return Collections.unmodifiableList(databaseHelper.getMonthlyTotals(userId, fromMonth, toMonth));
+            }
+        }, callback);
+    }
+
+    public void getYearlyTotals(final int userId, Callback<List<PeriodTotal>> callback) {
+        executeCached("yearly:" + userId, new Callable<List<PeriodTotal>>() {
+            @Override
+            public List<PeriodTotal> call() {
+                return Collections.unmodifiableList(databaseHelper.getYearlyTotals(userId));
+            }
+        }, callback);
+    }
+
+    // Pages come back as ExpenseRows, already formatted for display on the worker thread
+    public void getExpensesPage(final int userId, final int afterDay, final int afterId, final int limit,
+                                Callback<List<ExpenseRow>> callback) {
+        String key = "page:" + userId + ":" + afterDay + ":" + afterId + ":" + limit;
+        executeCached(PAGE_CACHE, key, new Callable<List<ExpenseRow>>() {
+            @Override
+            public List<ExpenseRow> call() {
+                return Collections.unmodifiableList(
+                        ExpenseRow.format(databaseHelper.getExpensesPage(userId, afterDay, afterId, limit)));
+            }
+        }, callback);
+    }
+
+    public void searchExpensesPage(final int userId, final String searchText, final int afterDay,
+                                   final int afterId, final int limit, Callback<List<ExpenseRow>> callback) {
+        String key = "search:" + userId + ":" + afterDay + ":" + afterId + ":" + limit + ":" + searchText;
+        executeCached(PAGE_CACHE, key, new Callable<List<ExpenseRow>>() {
+            @Override
+            public List<ExpenseRow> call() {
+                return Collections.unmodifiableList(ExpenseRow.format(
+                        databaseHelper.searchExpensesPage(userId, searchText, afterDay, afterId, limit)));
+            }
+        }, callback);
+    }
+
+    // The page just before the (day, id) key, newest first, for lists that dropped their newest rows
+    public void getNewerExpensesPage(final int userId, final int beforeDay, final int beforeId, final int limit,
+                                     Callback<List<ExpenseRow>> callback) {
+        String key = "newerPage:" + userId + ":" + beforeDay + ":" + beforeId + ":" + limit;
+        executeCached(PAGE_CACHE, key, new Callable<List<ExpenseRow>>() {
+            @Override
+            public List<ExpenseRow> call() {
+                return Collections.unmodifiableList(
+                        ExpenseRow.format(databaseHelper.getNewerExpensesPage(userId, beforeDay, beforeId, limit)));
+            }
+        }, callback);
+    }
+
+    public void searchNewerExpensesPage(final int userId, final String searchText, final int beforeDay,
+                                        final int beforeId, final int limit, Callback<List<ExpenseRow>> callback) {
+        String key = "newerSearch:" + userId + ":" + beforeDay + ":" + beforeId + ":" + limit + ":" + searchText;
+        executeCached(PAGE_CACHE, key, new Callable<List<ExpenseRow>>() {
+            @Override
+            public List<ExpenseRow> call() {
+                return Collections.unmodifiableList(ExpenseRow.format(
+                        databaseHelper.searchNewerExpensesPage(userId, searchText, beforeDay, beforeId, limit)));
+            }
+        }, callback);
+    }
+
+    public void addExpense(final Expense expense, Callback<Long> callback) {
+        execute(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return databaseHelper.addExpense(expense);
+            }
+        }, callback);
+    }
+
+    public void deleteExpense(final int id, Callback<Void> callback) {
+        execute(new Callable<Void>() {
+            @Override
+            public Void call() {
+                databaseHelper.deleteExpense(id);
+                return null;
+            }
+        }, callback);
+    }
+
+    public void deleteExpenses(final long[] ids, Callback<Integer> callback) {
+        execute(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return databaseHelper.deleteExpenses(ids);
+            }
+        }, callback);
+    }
+
+    public void deleteAllForUser(final int userId, Callback<Integer> callback) {
+        execute(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return databaseHelper.deleteAllForUser(userId);
+            }
+        }, callback);
+    }
+
+    // Stream all of the user's transactions into out, oldest first, and close it. Rows go
+    // straight from the cursor to the exporter's buffered writer, so memory stays flat no
+    // matter how long the history is. Progress is posted to the main thread; the result is
+    // the number of rows written, fewer than the total if the exporter was cancelled.
+    public void exportExpenses(final int userId, final OutputStream out, final ExpenseExporter exporter,
+                               final DatabaseHelper.ProgressListener listener, Callback<Integer> callback) {
+        execute(JOB_EXECUTOR, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                final int total;
+                try {
+                    total = databaseHelper.getUserTotals(userId).getTransactionCount();
+                } catch (RuntimeException e) {
+                    // The exporter doesn't own out yet
+                    closeQuietly(out);
+                    throw e;
+                }
+                final int[] written = new int[1];
+                final IOException[] failure = new IOException[1];
+                try {
+                    exporter.open(out);
+                    databaseHelper.forEachExpense(userId, DatabaseHelper.ALL_DAYS_FROM, DatabaseHelper.ALL_DAYS_TO,
+                            DatabaseHelper.ITERATE_REUSE_ROW, new DatabaseHelper.ExpenseConsumer() {
+                                @Override
+                                public boolean accept(Expense expense) {
+                                    if (exporter.isCancelled()) {
+                                        return false;
+                                    }
+                                    try {
+                                        exporter.write(expense);
+                                    } catch (IOException e) {
+                                        failure[0] = e;
+                                        return false;
+                                    }
+                                    if (++written[0] % PROGRESS_INTERVAL == 0) {
+                                        postProgress(listener, written[0], total);
+                                    }
+                                    return true;
+                                }
+                            });
+                    if (failure[0] != null) {
+                        throw failure[0];
+                    }
+                } finally {
+                    exporter.close();
+                }
+                postProgress(listener, written[0], total);
+                return written[0];
+            }
+        }, callback, out);
+    }
+
+    // Import a bank statement (CSV or OFX, optionally gzipped) from in, closing it. Rows are
+    // committed in batches as they stream in; progress with rows per second is posted to the
+    // main thread after each batch, and the result has the final counts.
+    public void importStatement(final int userId, final InputStream in, final StatementImporter importer,
+                                final StatementImporter.Listener listener,
+                                Callback<StatementImporter.Result> callback) {
+        execute(JOB_EXECUTOR, new Callable<StatementImporter.Result>() {
+            @Override
+            public StatementImporter.Result call() throws IOException {
+                return importer.run(databaseHelper, userId, in,
+                        new StatementImporter.Listener() {
+                            @Override
+                            public void onProgress(final StatementImporter.Result progress) {
+                                if (listener == null) {
+                                    return;
+                                }
+                                MAIN_HANDLER.post(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (!closed) {
+                                            listener.onProgress(progress);
+                                        }
+                                    }
+                                });
+                            }
+                        });
+            }
+        }, callback, in);
+    }
+
+    private void postProgress(final DatabaseHelper.ProgressListener listener, final int done, final int total) {
+        if (listener == null) {
+            return;
+        }
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed) {
+                    listener.onProgress(done, total);
+                }
+            }
+        });
+    }
+
+    private TransactionSnapshot loadSnapshot(final int userId) throws Exception {
+        synchronized (SNAPSHOT_LOAD_LOCK) {
+            return cached("snapshot:" + userId, new Callable<TransactionSnapshot>() {
+                @Override
+                public TransactionSnapshot call() {
+                    return databaseHelper.loadSnapshot(userId);
+                }
+            });
+        }
+    }
+
+    public void getCategories(Callback<List<Category>> callback) {
+        executeCached("categories", new Callable<List<Category>>() {
+            @Override
+            public List<Category> call() {
+                return Collections.unmodifiableList(databaseHelper.getCategories());
+            }
+        }, callback);
+    }
+
+    // Result is false if the name is already taken by another category of the same kind
+    public void renameCategory(final int categoryId, final String newName, Callback<Boolean> callback) {
+        execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return databaseHelper.renameCategory(categoryId, newName);
+            }
+        }, callback);
+    }
+
+    // Deliver committed writes that affect the user, coalesced, on the main thread until close()
+    public void addChangeListener(final int userId, final ExpenseChangeBus.Listener listener) {
+        ExpenseChangeBus.Listener filtered = new ExpenseChangeBus.Listener() {
+            @Override
+            public void onExpensesChanged(ExpenseChange change) {
+                if (!closed && change.affectsUser(userId)) {
+                    listener.onExpensesChanged(change);
+                }
+            }
+        };
+        changeListeners.add(filtered);
+        databaseHelper.getChangeBus().register(filtered);
+    }
+
+    // Cancel queued work and stop delivering results; writes already running still finish
+    public void close() {
+        closed = true;
+        for (ExpenseChangeBus.Listener listener : changeListeners) {
+            databaseHelper.getChangeBus().unregister(listener);
+        }
+        changeListeners.clear();
+        List<FutureTask<?>> tasks;
+        synchronized (pendingTasks) {
+            tasks = new ArrayList<>(pendingTasks);
+            pendingTasks.clear();
+        }
+        for (FutureTask<?> task : tasks) {
+            task.cancel(false);
+        }
+    }
+
+    // Serves the result from the query cache while no write has happened since it was read
+    private <T> void executeCached(String key, Callable<T> query, Callback<T> callback) {
+        executeCached(QUERY_CACHE, key, query, callback);
+    }
+
+    private <T> void executeCached(final QueryCache cache, final String key, final Callable<T> query,
+                                   Callback<T> callback) {
+        execute(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return cached(cache, key, query);
+            }
+        }, callback);
+    }
+
+    private <T> T cached(String key, Callable<T> query) throws Exception {
+        return cached(QUERY_CACHE, key, query);
+    }
+
+    private <T> T cached(QueryCache cache, String key, Callable<T> query) throws Exception {
+        // Read the version first: a write that lands during the query leaves the entry stale
+        long version = databaseHelper.getWriteVersion();
+        T result = cache.get(key, version);
+        if (result == null) {
+            result = query.call();
+            cache.put(key, version, result);
+        }
+        return result;
+    }
+
+    private <T> void execute(Callable<T> work, Callback<T> callback) {
+        execute(EXECUTOR, work, callback);
+    }
+
+    private <T> void execute(ExecutorService executor, Callable<T> work, Callback<T> callback) {
+        execute(executor, work, callback, null);
+    }
+
+    // stream, if not null, is one the work takes over and closes. Work dropped before it starts,
+    // by close() or because the repository was already closed, closes it here instead.
+    private <T> void execute(ExecutorService executor, final Callable<T> work, final Callback<T> callback,
+                             final Closeable stream) {
+        if (closed) {
+            closeQuietly(stream);
+            return;
+        }
+
+        // Claimed by whichever comes first: the work starting, or the task being cancelled
+        final AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                if (!claimed.compareAndSet(false, true)) {
+                    throw new CancellationException();
+                }
+                return work.call();
+            }
+        }) {
+            @Override
+            protected void done() {
+                synchronized (pendingTasks) {
+                    pendingTasks.remove(this);
+                }
+                if (isCancelled()) {
+                    if (claimed.compareAndSet(false, true)) {
+                        closeQuietly(stream);
+                    }
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+
+                T result = null;
+                Exception error = null;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                deliver(callback, result, error);
+            }
+        };
+
+        synchronized (pendingTasks) {
+            pendingTasks.add(task);
+        }
+        executor.execute(task);
+    }
+
+    private static void closeQuietly(Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close stream", e);
+        }
+    }
+
+    private static ExecutorService newExecutor(int threads, final String namePrefix) {
+        return new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result, final Exception error) {
+        if (callback == null) {
+            return;
+        }
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                // The screen may have been destroyed while this was queued
+                if (closed) {
+                    return;
+                }
+                if (error != null) {
+                    callback.onError(error);
+                } else {
+                    callback.onResult(result);
+                }
+            }
+        });
+    }
+}
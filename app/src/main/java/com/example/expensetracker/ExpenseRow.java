@@ -0,0 +1,69 @@
+package com.example.expensetracker;
+
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// An expense together with its display strings, formatted on a background thread so that
+// binding a row in ExpenseAdapter only copies references into views
+public class ExpenseRow {
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final Expense expense;
+    private final String amountText;
+    private final String dateText;
+
+    private ExpenseRow(Expense expense, String amountText, String dateText) {
+        this.expense = expense;
+        this.amountText = amountText;
+        this.dateText = dateText;
+    }
+
+    public Expense getExpense() {
+        return expense;
+    }
+
+    public int getId() {
+        return expense.getId();
+    }
+
+    public boolean isIncome() {
+        return expense.isIncome();
+    }
+
+    // Absolute amount in the default locale's currency
+    public String getAmountText() {
+        return amountText;
+    }
+
+    public String getDateText() {
+        return dateText;
+    }
+
+    // Formats a page of expenses. The formatters are not thread-safe, so each call makes its own.
+    public static List<ExpenseRow> format(List<Expense> expenses) {
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.getDefault());
+        DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, Locale.getDefault());
+        // Epoch days are calendar dates, so format them without a time zone shift
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+
+        List<ExpenseRow> rows = new ArrayList<>(expenses.size());
+        for (Expense expense : expenses) {
+            String dateText;
+            if (expense.getEpochDay() == EpochDay.UNKNOWN) {
+                dateText = expense.getDate();
+            } else {
+                date.setTime(expense.getEpochDay() * MILLIS_PER_DAY);
+                dateText = dateFormat.format(date);
+            }
+            String amountText = currencyFormat.format(Money.toUnits(expense.getAbsoluteAmountCents()));
+            rows.add(new ExpenseRow(expense, amountText, dateText));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.expensetracker;
+
+// All amounts are in cents
+public class ExpenseSummary {
+    private long totalIncomeCents;
+    private long totalExpenseCents;
+    private long highestIncomeCents;
+    private long highestExpenseCents;
+    private int incomeCount;
+    private int expenseCount;
+    private final CategoryTotals incomeByCategory = new CategoryTotals();
+    private final CategoryTotals expenseByCategory = new CategoryTotals();
+
+    // Fold in one aggregated (category, sign) group; amounts are absolute values
+    void addGroup(String category, boolean income, long totalCents, int count) {
+        if (income) {
+            totalIncomeCents += totalCents;
+            incomeCount += count;
+            incomeByCategory.add(category, totalCents);
+        } else {
+            totalExpenseCents += totalCents;
+            expenseCount += count;
+            expenseByCategory.add(category, totalCents);
+        }
+    }
+
+    void setHighest(long highestIncomeCents, long highestExpenseCents) {
+        this.highestIncomeCents = highestIncomeCents;
+        this.highestExpenseCents = highestExpenseCents;
+    }
+
+    public long getTotalIncomeCents() {
+        return totalIncomeCents;
+    }
+
+    public long getTotalExpenseCents() {
+        return totalExpenseCents;
+    }
+
+    public long getBalanceCents() {
+        return totalIncomeCents - totalExpenseCents;
+    }
+
+    public long getHighestIncomeCents() {
+        return highestIncomeCents;
+    }
+
+    public long getHighestExpenseCents() {
+        return highestExpenseCents;
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getExpenseCount() {
+        return expenseCount;
+    }
+
+    public int getTransactionCount() {
+        return incomeCount + expenseCount;
+    }
+
+    // Averages are for display, so they are returned in currency units
+    public double getAverageIncome() {
+        return incomeCount == 0 ? 0 : Money.toUnits(totalIncomeCents) / incomeCount;
+    }
+
+    public double getAverageExpense() {
+        return expenseCount == 0 ? 0 : Money.toUnits(totalExpenseCents) / expenseCount;
+    }
+
+    // Category totals are absolute values, ordered by descending total
+    public CategoryTotals getIncomeByCategory() {
+        return incomeByCategory;
+    }
+
+    public CategoryTotals getExpenseByCategory() {
+        return expenseByCategory;
+    }
+}
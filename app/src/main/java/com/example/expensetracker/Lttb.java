@@ -0,0 +1,68 @@
+package com.example.expensetracker;
+
+// Largest-triangle-three-buckets downsampling: keeps the first and last points and, from
+// each of the buckets in between, the point forming the largest triangle with the point
+// kept before it and the average of the next bucket. Peaks and dips survive, so a line
+// drawn through the kept points looks like one drawn through them all.
+final class Lttb {
+    private Lttb() {
+    }
+
+    // Indices of the points to keep, ascending; all of them when there are few enough
+    static int[] select(int[] x, long[] y, int size, int threshold) {
+        if (threshold >= size || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        int keptCount = 0;
+        kept[keptCount++] = 0;
+
+        // Points between the first and last, split into threshold - 2 buckets
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket; the last point stands in after the final bucket
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+            if (nextStart >= nextEnd) {
+                nextStart = size - 1;
+                nextEnd = size;
+            }
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            double previousX = x[previous];
+            double previousY = y[previous];
+            double largestArea = -1;
+            int largest = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle's area; only the comparison matters
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+                        - (previousX - x[i]) * (averageY - previousY));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            kept[keptCount++] = largest;
+            previous = largest;
+        }
+
+        kept[keptCount] = size - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.expensetracker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts are stored and summed as whole cents in a long; doubles are only used for display
+public final class Money {
+    public static final int CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    // Parse user input such as "12.5" exactly into cents; throws NumberFormatException
+    public static long parseCents(String amount) {
+        try {
+            return new BigDecimal(amount.trim())
+                    .setScale(2, RoundingMode.HALF_UP)
+                    .movePointRight(2)
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + amount);
+        }
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    // For NumberFormat and chart values only
+    public static double toUnits(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.expensetracker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+// Reads <STMTTRN> blocks from OFX files, both the SGML flavour (OFX 1.x, where leaf elements
+// are never closed) and XML (OFX 2.x). DTPOSTED, TRNAMT, NAME and MEMO are used; the rest of
+// the file is skipped as it streams past.
+final class OfxStatementReader implements StatementReader {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final StringBuilder text = new StringBuilder();
+
+    OfxStatementReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean next(StatementRecord record) throws IOException {
+        boolean inTransaction = false;
+        String memo = null;
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                continue;
+            }
+            String tag = readTag();
+            if (tag.equals("STMTTRN")) {
+                inTransaction = true;
+                record.clear();
+                memo = null;
+            } else if (!inTransaction) {
+                continue;
+            } else if (tag.equals("/STMTTRN")) {
+                if (record.description == null) {
+                    record.description = memo;
+                }
+                return true;
+            } else if (tag.equals("DTPOSTED")) {
+                record.date = readValue();
+            } else if (tag.equals("TRNAMT")) {
+                record.amount = readValue();
+            } else if (tag.equals("NAME")) {
+                record.description = readValue();
+            } else if (tag.equals("MEMO")) {
+                memo = readValue();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // The tag name after '<', upper-cased, with any closing '/' kept
+    private String readTag() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) != -1 && c != '>') {
+            text.append((char) c);
+        }
+        return text.toString().trim().toUpperCase(Locale.US);
+    }
+
+    // Element text up to the next tag, which is left unread
+    private String readValue() throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            char c = buffer[position];
+            if (c == '<') {
+                break;
+            }
+            text.append(c);
+            position++;
+        }
+        String value = text.toString().trim();
+        if (value.indexOf('&') >= 0) {
+            value = value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                    .replace("&apos;", "'").replace("&amp;", "&");
+        }
+        return value;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+}
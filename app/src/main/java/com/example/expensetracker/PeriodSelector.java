@@ -0,0 +1,97 @@
+package com.example.expensetracker;
+
+import android.app.DatePickerDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.DatePicker;
+import android.widget.Spinner;
+
+import java.util.Calendar;
+
+// Wires a Spinner to ReportPeriod for the dashboard and Reports. Presets apply as soon as
+// they are picked; Custom asks for a start and an end date, and cancelling either keeps the
+// previous period.
+class PeriodSelector {
+    interface Listener {
+        void onPeriodSelected(ReportPeriod period);
+    }
+
+    private final Context context;
+    private final Spinner spinner;
+    private final Listener listener;
+    private ReportPeriod period = ReportPeriod.allTime();
+
+    PeriodSelector(Context context, Spinner spinner, Listener listener) {
+        this.context = context;
+        this.spinner = spinner;
+        this.listener = listener;
+
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(context,
+                android.R.layout.simple_spinner_item, ReportPeriod.LABELS);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinner.setAdapter(adapter);
+        spinner.setSelection(period.getKind(), false);
+
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                // Also fires for the initial selection and when a cancelled picker resets it
+                if (position == period.getKind()) {
+                    return;
+                }
+                if (position == ReportPeriod.CUSTOM) {
+                    pickStartDate();
+                } else {
+                    select(ReportPeriod.of(position, EpochDay.today()));
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    ReportPeriod getPeriod() {
+        return period;
+    }
+
+    private void select(ReportPeriod newPeriod) {
+        period = newPeriod;
+        listener.onPeriodSelected(newPeriod);
+    }
+
+    private void pickStartDate() {
+        showDatePicker(new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int month, int dayOfMonth) {
+                pickEndDate(EpochDay.fromCivil(year, month + 1, dayOfMonth));
+            }
+        });
+    }
+
+    private void pickEndDate(final int fromDay) {
+        showDatePicker(new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int month, int dayOfMonth) {
+                select(ReportPeriod.custom(fromDay, EpochDay.fromCivil(year, month + 1, dayOfMonth)));
+            }
+        });
+    }
+
+    private void showDatePicker(DatePickerDialog.OnDateSetListener onDateSet) {
+        Calendar today = Calendar.getInstance();
+        DatePickerDialog dialog = new DatePickerDialog(context, onDateSet,
+                today.get(Calendar.YEAR), today.get(Calendar.MONTH), today.get(Calendar.DAY_OF_MONTH));
+        dialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialogInterface) {
+                spinner.setSelection(period.getKind());
+            }
+        });
+        dialog.show();
+    }
+}
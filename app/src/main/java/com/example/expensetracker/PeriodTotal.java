@@ -0,0 +1,42 @@
+package com.example.expensetracker;
+
+public class PeriodTotal {
+    private final int period;
+    private final long totalIncomeCents;
+    private final long totalExpenseCents;
+    private final int incomeCount;
+    private final int expenseCount;
+
+    // period is a yyyyMM month key or a yyyy year, depending on the query
+    public PeriodTotal(int period, long totalIncomeCents, long totalExpenseCents, int incomeCount, int expenseCount) {
+        this.period = period;
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpenseCents = totalExpenseCents;
+        this.incomeCount = incomeCount;
+        this.expenseCount = expenseCount;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public long getTotalIncomeCents() {
+        return totalIncomeCents;
+    }
+
+    public long getTotalExpenseCents() {
+        return totalExpenseCents;
+    }
+
+    public long getBalanceCents() {
+        return totalIncomeCents - totalExpenseCents;
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getExpenseCount() {
+        return expenseCount;
+    }
+}
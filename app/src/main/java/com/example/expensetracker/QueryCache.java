@@ -0,0 +1,58 @@
+package com.example.expensetracker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU map of query results, each tagged with the database write version it was read
+// at. An entry only counts as a hit while the version is unchanged, so writes never have to
+// find and evict the results they affect.
+class QueryCache {
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedResult> entries;
+
+    private static class CachedResult {
+        final long version;
+        final Object value;
+
+        CachedResult(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    QueryCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        // Access order, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > QueryCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Null when the key is missing or was cached before the latest write
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(String key, long version) {
+        CachedResult entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            return null;
+        }
+        return (T) entry.value;
+    }
+
+    // version must be read before the query ran, so a write that overlapped it makes the entry stale
+    synchronized void put(String key, long version, Object value) {
+        if (value == null) {
+            return;
+        }
+        CachedResult existing = entries.get(key);
+        if (existing != null && existing.version > version) {
+            return;
+        }
+        entries.put(key, new CachedResult(version, value));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.expensetracker;
+
+import java.util.Arrays;
+
+// Every report statistic in one pass over the rows: totals, counts and extremes for income
+// and expenses, and per-category totals. Aggregators over disjoint rows merge into the same
+// result in any grouping, so a long history can be summed in chunks. Plain Java, so it runs
+// in JVM unit tests.
+public class ReportAggregator {
+    private long[] incomeByCategory;
+    private long[] expenseByCategory;
+    private int[] incomeCounts;
+    private int[] expenseCounts;
+    private long highestIncome;
+    private long highestExpense;
+
+    public ReportAggregator(int categoryCount) {
+        int capacity = Math.max(categoryCount, 1);
+        incomeByCategory = new long[capacity];
+        expenseByCategory = new long[capacity];
+        incomeCounts = new int[capacity];
+        expenseCounts = new int[capacity];
+    }
+
+    // Signed amount: positive is income, anything else an expense, as in TransactionSnapshot
+    public void add(long amountCents, int categoryId) {
+        if (categoryId >= incomeByCategory.length) {
+            grow(categoryId + 1);
+        }
+        if (amountCents > 0) {
+            incomeByCategory[categoryId] += amountCents;
+            incomeCounts[categoryId]++;
+            if (amountCents > highestIncome) {
+                highestIncome = amountCents;
+            }
+        } else {
+            expenseByCategory[categoryId] -= amountCents;
+            expenseCounts[categoryId]++;
+            if (-amountCents > highestExpense) {
+                highestExpense = -amountCents;
+            }
+        }
+    }
+
+    // Rows [fromRow, toRow) of a snapshot's columns, without a call per row
+    void addRows(long[] amountsCents, short[] categoryIds, int fromRow, int toRow) {
+        long[] incomeTotals = incomeByCategory;
+        long[] expenseTotals = expenseByCategory;
+        int[] incomeCounts = this.incomeCounts;
+        int[] expenseCounts = this.expenseCounts;
+        long highestIncome = this.highestIncome;
+        long highestExpense = this.highestExpense;
+
+        for (int row = fromRow; row < toRow; row++) {
+            long amount = amountsCents[row];
+            int category = categoryIds[row];
+            if (amount > 0) {
+                incomeTotals[category] += amount;
+                incomeCounts[category]++;
+                if (amount > highestIncome) {
+                    highestIncome = amount;
+                }
+            } else {
+                expenseTotals[category] -= amount;
+                expenseCounts[category]++;
+                if (-amount > highestExpense) {
+                    highestExpense = -amount;
+                }
+            }
+        }
+
+        this.highestIncome = highestIncome;
+        this.highestExpense = highestExpense;
+    }
+
+    // Adds other's rows into this aggregator and returns it
+    public ReportAggregator merge(ReportAggregator other) {
+        if (other.incomeByCategory.length > incomeByCategory.length) {
+            grow(other.incomeByCategory.length);
+        }
+        for (int i = 0; i < other.incomeByCategory.length; i++) {
+            incomeByCategory[i] += other.incomeByCategory[i];
+            expenseByCategory[i] += other.expenseByCategory[i];
+            incomeCounts[i] += other.incomeCounts[i];
+            expenseCounts[i] += other.expenseCounts[i];
+        }
+        highestIncome = Math.max(highestIncome, other.highestIncome);
+        highestExpense = Math.max(highestExpense, other.highestExpense);
+        return this;
+    }
+
+    // categoryNames[i] names category id i; categories are added largest total first
+    public ExpenseSummary toSummary(String[] categoryNames) {
+        ExpenseSummary summary = new ExpenseSummary();
+        addGroupsByDescendingTotal(summary, true, categoryNames, incomeByCategory, incomeCounts);
+        addGroupsByDescendingTotal(summary, false, categoryNames, expenseByCategory, expenseCounts);
+        summary.setHighest(highestIncome, highestExpense);
+        return summary;
+    }
+
+    private static void addGroupsByDescendingTotal(ExpenseSummary summary, boolean income,
+                                                   String[] categoryNames, long[] totals, int[] counts) {
+        // Selection order over a few dozen categories; avoids boxing for a comparator sort.
+        // Ties keep category id order, so the result does not depend on how rows were chunked.
+        boolean[] added = new boolean[totals.length];
+        for (int n = 0; n < totals.length; n++) {
+            int best = -1;
+            for (int i = 0; i < totals.length; i++) {
+                if (!added[i] && counts[i] > 0 && (best < 0 || totals[i] > totals[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            added[best] = true;
+            summary.addGroup(categoryNames[best], income, totals[best], counts[best]);
+        }
+    }
+
+    private void grow(int capacity) {
+        incomeByCategory = Arrays.copyOf(incomeByCategory, capacity);
+        expenseByCategory = Arrays.copyOf(expenseByCategory, capacity);
+        incomeCounts = Arrays.copyOf(incomeCounts, capacity);
+        expenseCounts = Arrays.copyOf(expenseCounts, capacity);
+    }
+}
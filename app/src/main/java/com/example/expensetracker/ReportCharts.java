@@ -0,0 +1,107 @@
+package com.example.expensetracker;
+
+import android.graphics.Color;
+
+import com.github.mikephil.charting.data.BarData;
+import com.github.mikephil.charting.data.BarDataSet;
+import com.github.mikephil.charting.data.BarEntry;
+import com.github.mikephil.charting.data.PieData;
+import com.github.mikephil.charting.data.PieDataSet;
+import com.github.mikephil.charting.data.PieEntry;
+import com.github.mikephil.charting.formatter.ValueFormatter;
+import com.github.mikephil.charting.utils.ColorTemplate;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Locale;
+
+// The Reports statistics with their chart data, built on a worker thread so the activity only
+// hands finished datasets to the charts. Cached like any other query result, so reopening
+// Reports with no write in between shows the same objects without rebuilding them.
+public class ReportCharts {
+    // Beyond this many slices the labels overlap and the smallest are unreadable
+    static final int MAX_PIE_SLICES = 7;
+    static final double MIN_SLICE_FRACTION = 0.02;
+    static final String OTHER_CATEGORY = "Other";
+
+    private final ExpenseSummary summary;
+    private final PieData expensePie;
+    private final PieData incomePie;
+    private final BarData comparisonBar;
+
+    private ReportCharts(ExpenseSummary summary, PieData expensePie, PieData incomePie, BarData comparisonBar) {
+        this.summary = summary;
+        this.expensePie = expensePie;
+        this.incomePie = incomePie;
+        this.comparisonBar = comparisonBar;
+    }
+
+    static ReportCharts build(ExpenseSummary summary) {
+        // Only used from the main thread once built, when the charts draw their values
+        final NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.getDefault());
+        ValueFormatter currencyFormatter = new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return currencyFormat.format(value);
+            }
+        };
+
+        PieData expensePie = buildPie(summary.getExpenseByCategory(), "Expenses by Category",
+                ColorTemplate.MATERIAL_COLORS, currencyFormatter);
+        PieData incomePie = buildPie(summary.getIncomeByCategory(), "Income by Category",
+                ColorTemplate.COLORFUL_COLORS, currencyFormatter);
+
+        ArrayList<BarEntry> barEntries = new ArrayList<>();
+        barEntries.add(new BarEntry(0f, (float) Money.toUnits(summary.getTotalExpenseCents())));
+        barEntries.add(new BarEntry(1f, (float) Money.toUnits(summary.getTotalIncomeCents())));
+
+        BarDataSet barDataSet = new BarDataSet(barEntries, "Income vs Expenses");
+        barDataSet.setColors(new int[]{Color.rgb(244, 67, 54), Color.rgb(76, 175, 80)});
+        barDataSet.setValueTextSize(12f);
+        barDataSet.setValueTextColor(Color.BLACK);
+
+        BarData comparisonBar = new BarData(barDataSet);
+        comparisonBar.setValueFormatter(currencyFormatter);
+
+        return new ReportCharts(summary, expensePie, incomePie, comparisonBar);
+    }
+
+    // Null when there is nothing to draw
+    private static PieData buildPie(CategoryTotals categoryTotals, String label, int[] colors,
+                                    ValueFormatter formatter) {
+        if (categoryTotals.isEmpty()) {
+            return null;
+        }
+
+        CategoryTotals slices = categoryTotals.collapseTail(MAX_PIE_SLICES, MIN_SLICE_FRACTION, OTHER_CATEGORY);
+        ArrayList<PieEntry> entries = new ArrayList<>(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            entries.add(new PieEntry((float) Money.toUnits(slices.getTotalCents(i)), slices.getName(i)));
+        }
+
+        PieDataSet dataSet = new PieDataSet(entries, label);
+        dataSet.setColors(colors);
+        dataSet.setValueTextSize(12f);
+        dataSet.setValueTextColor(Color.WHITE);
+
+        PieData data = new PieData(dataSet);
+        data.setValueFormatter(formatter);
+        return data;
+    }
+
+    public ExpenseSummary getSummary() {
+        return summary;
+    }
+
+    public PieData getExpensePie() {
+        return expensePie;
+    }
+
+    public PieData getIncomePie() {
+        return incomePie;
+    }
+
+    public BarData getComparisonBar() {
+        return comparisonBar;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.expensetracker;
+
+// The date range a report or the dashboard covers, as inclusive epoch days
+public class ReportPeriod {
+    // Kinds, in the order the period spinners list them
+    public static final int ALL_TIME = 0;
+    public static final int THIS_MONTH = 1;
+    public static final int LAST_30_DAYS = 2;
+    public static final int YEAR_TO_DATE = 3;
+    public static final int CUSTOM = 4;
+
+    public static final String[] LABELS = {"All Time", "This Month", "Last 30 Days", "Year to Date", "Custom..."};
+
+    private final int kind;
+    private final int fromDay;
+    private final int toDay;
+
+    private ReportPeriod(int kind, int fromDay, int toDay) {
+        this.kind = kind;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+    }
+
+    public static ReportPeriod allTime() {
+        return new ReportPeriod(ALL_TIME, DatabaseHelper.ALL_DAYS_FROM, DatabaseHelper.ALL_DAYS_TO);
+    }
+
+    // A preset period ending today; use custom() for CUSTOM
+    public static ReportPeriod of(int kind, int today) {
+        switch (kind) {
+            case ALL_TIME:
+                return allTime();
+            case THIS_MONTH:
+                return new ReportPeriod(kind, EpochDay.startOfMonth(today), today);
+            case LAST_30_DAYS:
+                return new ReportPeriod(kind, today - 29, today);
+            case YEAR_TO_DATE:
+                return new ReportPeriod(kind, EpochDay.startOfYear(today), today);
+            default:
+                throw new IllegalArgumentException("Not a preset period: " + kind);
+        }
+    }
+
+    public static ReportPeriod custom(int fromDay, int toDay) {
+        return new ReportPeriod(CUSTOM, Math.min(fromDay, toDay), Math.max(fromDay, toDay));
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public int getFromDay() {
+        return fromDay;
+    }
+
+    public int getToDay() {
+        return toDay;
+    }
+
+    public boolean isAllTime() {
+        return kind == ALL_TIME;
+    }
+
+    // Whether a write described by change can move this period's numbers
+    public boolean isAffectedBy(ExpenseChange change) {
+        return isAllTime() || change.affectsMonths(EpochDay.toMonthKey(fromDay), EpochDay.toMonthKey(toDay));
+    }
+}
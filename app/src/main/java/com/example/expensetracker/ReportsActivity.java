@@ -3,39 +3,56 @@ package com.example.expensetracker;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.ImageButton;
+import android.widget.Spinner;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
 
 import com.github.mikephil.charting.charts.PieChart;
 import com.github.mikephil.charting.charts.BarChart;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.data.BarData;
-import com.github.mikephil.charting.data.BarDataSet;
-import com.github.mikephil.charting.data.BarEntry;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.data.PieData;
-import com.github.mikephil.charting.data.PieDataSet;
-import com.github.mikephil.charting.data.PieEntry;
 import com.github.mikephil.charting.formatter.ValueFormatter;
-import com.github.mikephil.charting.utils.ColorTemplate;
 
 import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Date;
 import java.util.Locale;
-import java.util.Map;
+import java.util.TimeZone;
 
 public class ReportsActivity extends AppCompatActivity {
+    // Enough points to follow the shape of the line without MPAndroidChart slowing down
+    private static final int MAX_TREND_POINTS = 300;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
     private ImageButton buttonBack;
     private TextView textViewTotalTransactions, textViewHighestExpense, textViewHighestIncome;
     private TextView textViewAvgExpense, textViewAvgIncome;
     private PieChart pieChartExpenses, pieChartIncome;
     private BarChart barChartComparison;
-    private CardView cardViewNoData;
-    private DatabaseHelper databaseHelper;
+    private LineChart lineChartTrend;
+    private CardView cardViewNoData, cardViewTrend;
+    private Spinner spinnerTrendBucket;
+    private int trendBucket = TrendSeries.WEEKLY;
+    private int trendGeneration;
+    private PeriodSelector periodSelector;
+    // Bumped on every load so results for a previously selected period are ignored
+    private int reportGeneration;
+    private ExpenseRepository expenseRepository;
     private int currentUserId;
     private NumberFormat currencyFormat;
+    // Set when a write lands while the screen is hidden; the reports reload on return
+    private boolean resumed;
+    private boolean reportsStale;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -45,8 +62,8 @@ public class ReportsActivity extends AppCompatActivity {
         // Get User ID from Intent
         currentUserId = getIntent().getIntExtra("USER_ID", 1);
 
-        // Initialize DatabaseHelper
-        databaseHelper = new DatabaseHelper(this);
+        // Database work runs off the main thread through the repository
+        expenseRepository = new ExpenseRepository(this);
         currencyFormat = NumberFormat.getCurrencyInstance(Locale.getDefault());
 
         // Initialize Views
@@ -69,13 +86,63 @@ public class ReportsActivity extends AppCompatActivity {
         pieChartExpenses = findViewById(R.id.pie_chart_expenses);
         pieChartIncome = findViewById(R.id.pie_chart_income);
         barChartComparison = findViewById(R.id.bar_chart_comparison);
+        lineChartTrend = findViewById(R.id.line_chart_trend);
+        cardViewTrend = findViewById(R.id.card_view_trend);
+        spinnerTrendBucket = findViewById(R.id.spinner_trend_bucket);
+
+        ArrayAdapter<String> bucketAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, TrendSeries.LABELS);
+        bucketAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerTrendBucket.setAdapter(bucketAdapter);
+        spinnerTrendBucket.setSelection(trendBucket, false);
         cardViewNoData = findViewById(R.id.card_view_no_data);
+
+        // Switching periods re-aggregates only the snapshot rows in the new range
+        periodSelector = new PeriodSelector(this, (Spinner) findViewById(R.id.spinner_period),
+                new PeriodSelector.Listener() {
+                    @Override
+                    public void onPeriodSelected(ReportPeriod period) {
+                        loadReportsData();
+                    }
+                });
     }
 
     private void loadReportsData() {
-        List<Expense> expenses = databaseHelper.getAllExpenses(currentUserId);
+        // Statistics and chart datasets are built off the main thread from the user's snapshot,
+        // loaded on first use; with no write since the last visit they come straight from the cache
+        final int generation = ++reportGeneration;
+        ReportPeriod period = periodSelector.getPeriod();
+        expenseRepository.getReportCharts(currentUserId, period.getFromDay(), period.getToDay(),
+                new ExpenseRepository.Callback<ReportCharts>() {
+                    @Override
+                    public void onResult(ReportCharts charts) {
+                        // A quicker result for a newer period may already be showing
+                        if (generation == reportGeneration) {
+                            showReports(charts);
+                        }
+                    }
+                });
+        loadTrend();
+    }
+
+    private void loadTrend() {
+        // Bucketed from the shared snapshot and capped at MAX_TREND_POINTS on a worker thread
+        final int generation = ++trendGeneration;
+        ReportPeriod period = periodSelector.getPeriod();
+        expenseRepository.getSpendingTrend(currentUserId, period.getFromDay(), period.getToDay(),
+                trendBucket, MAX_TREND_POINTS, new ExpenseRepository.Callback<TrendSeries>() {
+                    @Override
+                    public void onResult(TrendSeries series) {
+                        if (generation == trendGeneration) {
+                            setupTrendChart(series);
+                        }
+                    }
+                });
+    }
 
-        if (expenses.isEmpty()) {
+    private void showReports(ReportCharts charts) {
+        ExpenseSummary summary = charts.getSummary();
+        if (summary.getTransactionCount() == 0) {
             // Show no data message
             cardViewNoData.setVisibility(View.VISIBLE);
             pieChartExpenses.setVisibility(View.GONE);
@@ -85,206 +152,159 @@ public class ReportsActivity extends AppCompatActivity {
         }
 
         cardViewNoData.setVisibility(View.GONE);
-
-        // Separate expenses and income
-        List<Expense> expenseList = new ArrayList<>();
-        List<Expense> incomeList = new ArrayList<>();
-
-        for (Expense expense : expenses) {
-            if (expense.isIncome()) {
-                incomeList.add(expense);
-            } else {
-                expenseList.add(expense);
-            }
-        }
+        // A previously selected period may have had no data and hidden the bar chart
+        barChartComparison.setVisibility(View.VISIBLE);
 
         // Calculate statistics
-        calculateStatistics(expenses, expenseList, incomeList);
+        calculateStatistics(summary);
 
-        // Setup charts
-        setupExpensePieChart(expenseList);
-        setupIncomePieChart(incomeList);
-        setupComparisonBarChart(expenseList, incomeList);
+        // Setup charts; the datasets are ready, so they are drawn without an entry animation
+        setupPieChart(pieChartExpenses, charts.getExpensePie(), "Expenses\nBy Category");
+        setupPieChart(pieChartIncome, charts.getIncomePie(), "Income\nBy Category");
+        setupComparisonBarChart(charts.getComparisonBar());
     }
 
-    private void calculateStatistics(List<Expense> all, List<Expense> expenses, List<Expense> income) {
-        // Total transactions
-        textViewTotalTransactions.setText(String.valueOf(all.size()));
-
-        // Highest expense
-        double highestExpense = 0;
-        for (Expense exp : expenses) {
-            if (Math.abs(exp.getAmount()) > highestExpense) {
-                highestExpense = Math.abs(exp.getAmount());
-            }
-        }
-        textViewHighestExpense.setText(currencyFormat.format(highestExpense));
+    private void calculateStatistics(ExpenseSummary summary) {
+        textViewTotalTransactions.setText(String.valueOf(summary.getTransactionCount()));
+        textViewHighestExpense.setText(currencyFormat.format(Money.toUnits(summary.getHighestExpenseCents())));
+        textViewHighestIncome.setText(currencyFormat.format(Money.toUnits(summary.getHighestIncomeCents())));
+        textViewAvgExpense.setText(currencyFormat.format(summary.getAverageExpense()));
+        textViewAvgIncome.setText(currencyFormat.format(summary.getAverageIncome()));
+    }
 
-        // Highest income
-        double highestIncome = 0;
-        for (Expense inc : income) {
-            if (inc.getAmount() > highestIncome) {
-                highestIncome = inc.getAmount();
-            }
+    private void setupPieChart(PieChart pieChart, PieData data, String centerText) {
+        if (data == null) {
+            pieChart.setVisibility(View.GONE);
+            return;
         }
-        textViewHighestIncome.setText(currencyFormat.format(highestIncome));
 
-        // Average expense
-        double totalExpense = 0;
-        for (Expense exp : expenses) {
-            totalExpense += Math.abs(exp.getAmount());
-        }
-        double avgExpense = expenses.isEmpty() ? 0 : totalExpense / expenses.size();
-        textViewAvgExpense.setText(currencyFormat.format(avgExpense));
+        pieChart.setVisibility(View.VISIBLE);
+        pieChart.setData(data);
+        pieChart.getDescription().setEnabled(false);
+        pieChart.setCenterText(centerText);
+        pieChart.setCenterTextSize(14f);
+        pieChart.setDrawHoleEnabled(true);
+        pieChart.setHoleColor(Color.WHITE);
+        pieChart.setTransparentCircleRadius(58f);
+        pieChart.invalidate();
+    }
 
-        // Average income
-        double totalIncome = 0;
-        for (Expense inc : income) {
-            totalIncome += inc.getAmount();
-        }
-        double avgIncome = income.isEmpty() ? 0 : totalIncome / income.size();
-        textViewAvgIncome.setText(currencyFormat.format(avgIncome));
+    private void setupComparisonBarChart(BarData data) {
+        barChartComparison.setData(data);
+        barChartComparison.getDescription().setEnabled(false);
+        barChartComparison.getXAxis().setEnabled(false);
+        barChartComparison.getAxisRight().setEnabled(false);
+        barChartComparison.getAxisLeft().setTextSize(10f);
+        barChartComparison.getLegend().setEnabled(false);
+        barChartComparison.setFitBars(true);
+        barChartComparison.invalidate();
     }
 
-    private void setupExpensePieChart(List<Expense> expenses) {
-        if (expenses.isEmpty()) {
-            pieChartExpenses.setVisibility(View.GONE);
+    private void setupTrendChart(TrendSeries series) {
+        // Nothing to draw a line through with fewer than two buckets
+        if (series.size() < 2) {
+            cardViewTrend.setVisibility(View.GONE);
             return;
         }
 
-        pieChartExpenses.setVisibility(View.VISIBLE);
+        cardViewTrend.setVisibility(View.VISIBLE);
 
-        // Group by category
-        Map<String, Double> categoryTotals = new HashMap<>();
-        for (Expense expense : expenses) {
-            String category = expense.getCategory();
-            double amount = Math.abs(expense.getAmount());
-            categoryTotals.put(category, categoryTotals.getOrDefault(category, 0.0) + amount);
+        ArrayList<Entry> entries = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            entries.add(new Entry(series.getStartDay(i), (float) Money.toUnits(series.getExpenseCents(i))));
         }
 
-        // Create pie entries
-        ArrayList<PieEntry> entries = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
-            entries.add(new PieEntry(entry.getValue().floatValue(), entry.getKey()));
-        }
-
-        PieDataSet dataSet = new PieDataSet(entries, "Expenses by Category");
-        dataSet.setColors(ColorTemplate.MATERIAL_COLORS);
-        dataSet.setValueTextSize(12f);
-        dataSet.setValueTextColor(Color.WHITE);
-
-        PieData data = new PieData(dataSet);
-        data.setValueFormatter(new ValueFormatter() {
+        LineDataSet dataSet = new LineDataSet(entries, "Spending");
+        dataSet.setColor(Color.rgb(244, 67, 54));
+        dataSet.setLineWidth(2f);
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+
+        // x values are epoch days; label them with the bucket's start date
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(
+                series.getBucket() == TrendSeries.MONTHLY ? "MMM yyyy" : "MMM d", Locale.getDefault());
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final Date date = new Date();
+
+        XAxis xAxis = lineChartTrend.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setDrawGridLines(false);
+        xAxis.setLabelCount(4);
+        xAxis.setValueFormatter(new ValueFormatter() {
             @Override
             public String getFormattedValue(float value) {
-                return currencyFormat.format(value);
+                date.setTime((long) value * MILLIS_PER_DAY);
+                return dateFormat.format(date);
             }
         });
 
-        pieChartExpenses.setData(data);
-        pieChartExpenses.getDescription().setEnabled(false);
-        pieChartExpenses.setCenterText("Expenses\nBy Category");
-        pieChartExpenses.setCenterTextSize(14f);
-        pieChartExpenses.setDrawHoleEnabled(true);
-        pieChartExpenses.setHoleColor(Color.WHITE);
-        pieChartExpenses.setTransparentCircleRadius(58f);
-        pieChartExpenses.animateY(1000);
-        pieChartExpenses.invalidate();
+        lineChartTrend.setData(new LineData(dataSet));
+        lineChartTrend.getDescription().setEnabled(false);
+        lineChartTrend.getAxisRight().setEnabled(false);
+        lineChartTrend.getAxisLeft().setAxisMinimum(0f);
+        lineChartTrend.getLegend().setEnabled(false);
+        lineChartTrend.invalidate();
     }
 
-    private void setupIncomePieChart(List<Expense> income) {
-        if (income.isEmpty()) {
-            pieChartIncome.setVisibility(View.GONE);
-            return;
-        }
-
-        pieChartIncome.setVisibility(View.VISIBLE);
-
-        // Group by category
-        Map<String, Double> categoryTotals = new HashMap<>();
-        for (Expense inc : income) {
-            String category = inc.getCategory();
-            double amount = inc.getAmount();
-            categoryTotals.put(category, categoryTotals.getOrDefault(category, 0.0) + amount);
-        }
-
-        // Create pie entries
-        ArrayList<PieEntry> entries = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
-            entries.add(new PieEntry(entry.getValue().floatValue(), entry.getKey()));
-        }
-
-        PieDataSet dataSet = new PieDataSet(entries, "Income by Category");
-        dataSet.setColors(ColorTemplate.COLORFUL_COLORS);
-        dataSet.setValueTextSize(12f);
-        dataSet.setValueTextColor(Color.WHITE);
-
-        PieData data = new PieData(dataSet);
-        data.setValueFormatter(new ValueFormatter() {
+    private void setupListeners() {
+        buttonBack.setOnClickListener(new View.OnClickListener() {
             @Override
-            public String getFormattedValue(float value) {
-                return currencyFormat.format(value);
+            public void onClick(View v) {
+                finish();
             }
         });
 
-        pieChartIncome.setData(data);
-        pieChartIncome.getDescription().setEnabled(false);
-        pieChartIncome.setCenterText("Income\nBy Category");
-        pieChartIncome.setCenterTextSize(14f);
-        pieChartIncome.setDrawHoleEnabled(true);
-        pieChartIncome.setHoleColor(Color.WHITE);
-        pieChartIncome.setTransparentCircleRadius(58f);
-        pieChartIncome.animateY(1000);
-        pieChartIncome.invalidate();
-    }
-
-    private void setupComparisonBarChart(List<Expense> expenses, List<Expense> income) {
-        ArrayList<BarEntry> entries = new ArrayList<>();
-
-        // Calculate totals
-        double totalExpense = 0;
-        for (Expense exp : expenses) {
-            totalExpense += Math.abs(exp.getAmount());
-        }
-
-        double totalIncome = 0;
-        for (Expense inc : income) {
-            totalIncome += inc.getAmount();
-        }
-
-        entries.add(new BarEntry(0f, (float) totalExpense));
-        entries.add(new BarEntry(1f, (float) totalIncome));
-
-        BarDataSet dataSet = new BarDataSet(entries, "Income vs Expenses");
-        dataSet.setColors(new int[]{Color.rgb(244, 67, 54), Color.rgb(76, 175, 80)});
-        dataSet.setValueTextSize(12f);
-        dataSet.setValueTextColor(Color.BLACK);
+        spinnerTrendBucket.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (position != trendBucket) {
+                    trendBucket = position;
+                    loadTrend();
+                }
+            }
 
-        BarData data = new BarData(dataSet);
-        data.setValueFormatter(new ValueFormatter() {
             @Override
-            public String getFormattedValue(float value) {
-                return currencyFormat.format(value);
+            public void onNothingSelected(AdapterView<?> parent) {
             }
         });
 
-        barChartComparison.setData(data);
-        barChartComparison.getDescription().setEnabled(false);
-        barChartComparison.getXAxis().setEnabled(false);
-        barChartComparison.getAxisRight().setEnabled(false);
-        barChartComparison.getAxisLeft().setTextSize(10f);
-        barChartComparison.getLegend().setEnabled(false);
-        barChartComparison.setFitBars(true);
-        barChartComparison.animateY(1000);
-        barChartComparison.invalidate();
-    }
-
-    private void setupListeners() {
-        buttonBack.setOnClickListener(new View.OnClickListener() {
+        // Writes elsewhere, such as a background import, refresh the open reports
+        expenseRepository.addChangeListener(currentUserId, new ExpenseChangeBus.Listener() {
             @Override
-            public void onClick(View v) {
-                finish();
+            public void onExpensesChanged(ExpenseChange change) {
+                // Writes outside the selected period leave the reports as they are
+                if (!change.hasRenamedCategories() && !periodSelector.getPeriod().isAffectedBy(change)) {
+                    return;
+                }
+                if (resumed) {
+                    loadReportsData();
+                } else {
+                    reportsStale = true;
+                }
             }
         });
     }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (reportsStale) {
+            reportsStale = false;
+            loadReportsData();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Drop any database work still queued for this screen
+        expenseRepository.close();
+    }
 }
\ No newline at end of file
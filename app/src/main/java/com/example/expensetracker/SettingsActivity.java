@@ -3,26 +3,53 @@ package com.example.expensetracker;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.DocumentsContract;
 import android.view.View;
 import android.widget.CompoundButton;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
+import android.widget.ProgressBar;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+
 public class SettingsActivity extends AppCompatActivity {
     private ImageButton buttonBack;
     private Switch switchDarkMode, switchNotifications;
-    private LinearLayout layoutClearData, layoutAbout, layoutPrivacy, layoutHelp;
+    private LinearLayout layoutImportData, layoutExportData, layoutClearData, layoutAbout, layoutPrivacy, layoutHelp;
     private TextView textViewVersion, textViewCurrency;
-    private DatabaseHelper databaseHelper;
+    private ExpenseRepository expenseRepository;
     private SharedPreferences preferences;
     private int currentUserId;
+    // Export format picked while its destination document is being chosen, as an index into
+    // EXPORT_FORMATS, or NO_EXPORT. Saved with the instance state, as the activity may be
+    // recreated while the document picker is open.
+    private int pendingExportFormat = NO_EXPORT;
+    // Date order picked for the import whose statement file is being chosen; saved likewise
+    private boolean pendingImportDayFirst;
+    private AlertDialog progressDialog;
+    private ProgressBar progressBar;
+
+    private static final int REQUEST_EXPORT = 1;
+    private static final int REQUEST_IMPORT = 2;
+
+    private static final String[] EXPORT_FORMATS = {"CSV", "CSV (gzip)", "JSON Lines", "JSON Lines (gzip)"};
+    private static final int NO_EXPORT = -1;
+
+    // Instance state keys
+    private static final String STATE_EXPORT_FORMAT = "pending_export_format";
+    private static final String STATE_IMPORT_DAY_FIRST = "pending_import_day_first";
 
     // SharedPreferences keys
     private static final String PREFS_NAME = "ExpenseTrackerPrefs";
@@ -38,8 +65,14 @@ public class SettingsActivity extends AppCompatActivity {
         // Get User ID from Intent
         currentUserId = getIntent().getIntExtra("USER_ID", 1);
 
+        // A document picker may have been open when the activity was last destroyed
+        if (savedInstanceState != null) {
+            pendingExportFormat = savedInstanceState.getInt(STATE_EXPORT_FORMAT, NO_EXPORT);
+            pendingImportDayFirst = savedInstanceState.getBoolean(STATE_IMPORT_DAY_FIRST);
+        }
+
         // Initialize
-        databaseHelper = new DatabaseHelper(this);
+        expenseRepository = new ExpenseRepository(this);
         preferences = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
 
         // Initialize Views
@@ -56,6 +89,8 @@ public class SettingsActivity extends AppCompatActivity {
         buttonBack = findViewById(R.id.button_back);
         switchDarkMode = findViewById(R.id.switch_dark_mode);
         switchNotifications = findViewById(R.id.switch_notifications);
+        layoutImportData = findViewById(R.id.layout_import_data);
+        layoutExportData = findViewById(R.id.layout_export_data);
         layoutClearData = findViewById(R.id.layout_clear_data);
         layoutAbout = findViewById(R.id.layout_about);
         layoutPrivacy = findViewById(R.id.layout_privacy);
@@ -131,6 +166,22 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
 
+        // Import Statement
+        layoutImportData.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showImportDialog();
+            }
+        });
+
+        // Export Data
+        layoutExportData.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showExportDialog();
+            }
+        });
+
         // Clear Data
         layoutClearData.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -189,6 +240,224 @@ public class SettingsActivity extends AppCompatActivity {
         builder.show();
     }
 
+    private void showExportDialog() {
+        new AlertDialog.Builder(this)
+                .setTitle("Export Transactions")
+                .setItems(EXPORT_FORMATS, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        pendingExportFormat = which;
+                        ExpenseExporter exporter = newExporter(which);
+
+                        // Let the user pick where the file goes; no storage permission needed
+                        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        intent.setType(exporter.getMimeType());
+                        intent.putExtra(Intent.EXTRA_TITLE, exporter.getFileName());
+                        startActivityForResult(intent, REQUEST_EXPORT);
+                    }
+                })
+                .show();
+    }
+
+    // Exporter for an index into EXPORT_FORMATS
+    private static ExpenseExporter newExporter(int exportFormat) {
+        return new ExpenseExporter(exportFormat < 2 ? ExpenseExporter.CSV : ExpenseExporter.JSON_LINES,
+                exportFormat % 2 == 1);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_EXPORT && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            if (pendingExportFormat != NO_EXPORT) {
+                exportData(data.getData(), newExporter(pendingExportFormat));
+            } else {
+                // The picker already created the document; don't leave it behind empty
+                deleteDocument(data.getData());
+            }
+        } else if (requestCode == REQUEST_IMPORT && resultCode == RESULT_OK && data != null
+                && data.getData() != null) {
+            importStatement(data.getData(), new StatementImporter(pendingImportDayFirst));
+        }
+        if (requestCode == REQUEST_EXPORT) {
+            pendingExportFormat = NO_EXPORT;
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_EXPORT_FORMAT, pendingExportFormat);
+        outState.putBoolean(STATE_IMPORT_DAY_FIRST, pendingImportDayFirst);
+    }
+
+    private void showImportDialog() {
+        // Only matters for CSV dates such as 03/04/2024; OFX and ISO dates are unambiguous
+        final String[] dateOrders = {"Month first (03/31/2024)", "Day first (31/03/2024)"};
+
+        new AlertDialog.Builder(this)
+                .setTitle("Statement date format")
+                .setItems(dateOrders, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        pendingImportDayFirst = which == 1;
+
+                        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                        intent.addCategory(Intent.CATEGORY_OPENABLE);
+                        // Banks label CSV and OFX files with all sorts of MIME types
+                        intent.setType("*/*");
+                        startActivityForResult(intent, REQUEST_IMPORT);
+                    }
+                })
+                .show();
+    }
+
+    private void importStatement(Uri uri, final StatementImporter importer) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException e) {
+            in = null;
+        }
+        if (in == null) {
+            Toast.makeText(this, "Could not open the statement", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        showProgressDialog("Importing statement", new Runnable() {
+            @Override
+            public void run() {
+                importer.cancel();
+            }
+        });
+
+        // Parsing, duplicate checks and batched inserts all run on a worker thread
+        final NumberFormat numberFormat = NumberFormat.getIntegerInstance();
+        expenseRepository.importStatement(currentUserId, in, importer, new StatementImporter.Listener() {
+            @Override
+            public void onProgress(StatementImporter.Result progress) {
+                if (progressDialog != null) {
+                    progressDialog.setMessage(numberFormat.format(progress.getRowsRead()) + " rows read, " +
+                            numberFormat.format(progress.getRowsPerSecond()) + " rows/s");
+                }
+            }
+        }, new ExpenseRepository.Callback<StatementImporter.Result>() {
+            @Override
+            public void onResult(StatementImporter.Result result) {
+                dismissProgressDialog();
+                new AlertDialog.Builder(SettingsActivity.this)
+                        .setTitle(importer.isCancelled() ? "Import cancelled" : "Import complete")
+                        .setMessage("Imported: " + numberFormat.format(result.getImported()) + "\n" +
+                                "Already stored: " + numberFormat.format(result.getDuplicates()) + "\n" +
+                                "Unreadable rows: " + numberFormat.format(result.getRejected()) + "\n\n" +
+                                numberFormat.format(result.getRowsPerSecond()) + " rows/s")
+                        .setPositiveButton("OK", null)
+                        .show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                dismissProgressDialog();
+                Toast.makeText(SettingsActivity.this, "Import failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void exportData(final Uri uri, final ExpenseExporter exporter) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri, "wt");
+        } catch (FileNotFoundException e) {
+            out = null;
+        }
+        if (out == null) {
+            Toast.makeText(this, "Could not open the export file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        showProgressDialog("Exporting transactions", new Runnable() {
+            @Override
+            public void run() {
+                exporter.cancel();
+            }
+        });
+
+        // Rows are streamed from the database into the file on a worker thread
+        expenseRepository.exportExpenses(currentUserId, out, exporter, new DatabaseHelper.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                updateProgress(done, total);
+            }
+        }, new ExpenseRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer written) {
+                dismissProgressDialog();
+                if (exporter.isCancelled()) {
+                    // Don't leave a truncated file behind
+                    deleteDocument(uri);
+                    Toast.makeText(SettingsActivity.this, "Export cancelled", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(SettingsActivity.this, "Exported " + written + " transactions", Toast.LENGTH_SHORT).show();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                dismissProgressDialog();
+                deleteDocument(uri);
+                Toast.makeText(SettingsActivity.this, "Export failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void deleteDocument(Uri uri) {
+        try {
+            DocumentsContract.deleteDocument(getContentResolver(), uri);
+        } catch (FileNotFoundException | RuntimeException e) {
+            // Some providers can't delete; the partial file is left for the user to remove
+        }
+    }
+
+    private void showProgressDialog(String title, final Runnable onCancel) {
+        progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setIndeterminate(true);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        progressBar.setPadding(padding, padding, padding, 0);
+
+        progressDialog = new AlertDialog.Builder(this)
+                .setTitle(title)
+                // Set now so the message view exists for progress updates
+                .setMessage("Starting...")
+                .setView(progressBar)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        onCancel.run();
+                    }
+                })
+                .show();
+    }
+
+    private void updateProgress(int done, int total) {
+        if (progressBar == null || total <= 0) {
+            return;
+        }
+        progressBar.setIndeterminate(false);
+        progressBar.setMax(total);
+        progressBar.setProgress(done);
+        progressDialog.setMessage(done + " of " + total + " transactions");
+    }
+
+    private void dismissProgressDialog() {
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+            progressBar = null;
+        }
+    }
+
     private void showClearDataDialog() {
         new AlertDialog.Builder(this)
                 .setTitle("Clear All Data")
@@ -206,15 +475,13 @@ public class SettingsActivity extends AppCompatActivity {
     }
 
     private void clearUserData() {
-        // Get all expenses
-        java.util.List<Expense> expenses = databaseHelper.getAllExpenses(currentUserId);
-
-        // Delete each expense
-        for (Expense expense : expenses) {
-            databaseHelper.deleteExpense(expense.getId());
-        }
-
-        Toast.makeText(this, "All data cleared successfully", Toast.LENGTH_SHORT).show();
+        // Delete all of the user's expenses in one statement
+        expenseRepository.deleteAllForUser(currentUserId, new ExpenseRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer deleted) {
+                Toast.makeText(SettingsActivity.this, "All data cleared successfully", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void showAboutDialog() {
@@ -259,4 +526,14 @@ public class SettingsActivity extends AppCompatActivity {
                 .setPositiveButton("Got it", null)
                 .show();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // A running export or import finishes in the background, but its progress and result
+        // no longer reach this screen, so the dialog would only leak with a dead Cancel button
+        dismissProgressDialog();
+        // Drop any database work still queued for this screen
+        expenseRepository.close();
+    }
 }
\ No newline at end of file
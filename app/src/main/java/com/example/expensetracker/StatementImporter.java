@@ -0,0 +1,226 @@
+package com.example.expensetracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+// Imports a bank statement in stages: a streaming reader (CSV or OFX), normalization into
+// Expense's sign convention, duplicate detection against stored rows, and inserts committed
+// a batch at a time through BulkInsert. Only one batch is held in memory, in reused Expense
+// objects, so a file of millions of lines costs no more memory than a short one.
+// cancel() may be called from any thread; batches already committed stay imported. The
+// batches' changes are published together when the import ends, so open screens refresh once.
+public class StatementImporter {
+    // Rows per transaction; large enough to amortise the commit, small enough that a
+    // cancelled or failed import loses little and other writers are not held off for long
+    static final int BATCH_SIZE = 5000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SNIFF_LENGTH = 1024;
+
+    public interface Listener {
+        // Called after every committed batch with the totals so far
+        void onProgress(Result progress);
+    }
+
+    public static final class Result {
+        private final int rowsRead;
+        private final int imported;
+        private final int duplicates;
+        private final int rejected;
+        private final long elapsedMillis;
+
+        Result(int rowsRead, int imported, int duplicates, int rejected, long elapsedMillis) {
+            this.rowsRead = rowsRead;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getRowsRead() {
+            return rowsRead;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        // Rows already stored, left out
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        // Rows without a usable date or amount
+        public int getRejected() {
+            return rejected;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public int getRowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : (int) (rowsRead * 1000L / elapsedMillis);
+        }
+    }
+
+    private final StatementNormalizer normalizer;
+    private volatile boolean cancelled;
+
+    // dayFirst reads 03/04/2024 as 3 April rather than March 4
+    public StatementImporter(boolean dayFirst) {
+        this.normalizer = new StatementNormalizer(dayFirst);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Runs on the calling thread and closes in. Throws IOException if the file can't be read
+    // or isn't a statement; rows committed before the failure stay imported.
+    public Result run(DatabaseHelper databaseHelper, int userId, InputStream in, Listener listener)
+            throws IOException {
+        // Closes in on every path, including a bad gzip header or a failed read of the stored rows
+        // before the reader takes it over; closing it again after the reader is harmless
+        try (InputStream input = in) {
+            return importStatement(databaseHelper, userId, input, listener);
+        }
+    }
+
+    private Result importStatement(DatabaseHelper databaseHelper, int userId, InputStream in, Listener listener)
+            throws IOException {
+        long start = System.nanoTime();
+        StatementReader reader = open(in);
+
+        // Rows this import inserts get larger ids, so they never count as already stored
+        int maxStoredId = databaseHelper.getMaxExpenseId();
+        DuplicateFilter duplicateFilter = new DuplicateFilter();
+        StatementRecord record = new StatementRecord();
+        Expense[] batch = new Expense[BATCH_SIZE];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Expense();
+        }
+
+        // Every batch's change, published once in the finally below however the import ends
+        Map<Integer, ExpenseChange> changes = new HashMap<>();
+        int rowsRead = 0;
+        int imported = 0;
+        int duplicates = 0;
+        int rejected = 0;
+        try {
+            boolean more = true;
+            while (more && !cancelled) {
+                int size = 0;
+                int fromDay = Integer.MAX_VALUE;
+                int toDay = Integer.MIN_VALUE;
+                while (size < BATCH_SIZE && (more = reader.next(record))) {
+                    rowsRead++;
+                    Expense expense = batch[size];
+                    if (!normalizer.normalize(record, userId, expense)) {
+                        rejected++;
+                        continue;
+                    }
+                    fromDay = Math.min(fromDay, expense.getEpochDay());
+                    toDay = Math.max(toDay, expense.getEpochDay());
+                    size++;
+                }
+                if (size == 0) {
+                    continue;
+                }
+
+                loadStored(databaseHelper, userId, fromDay, toDay, maxStoredId, duplicateFilter);
+                DatabaseHelper.BulkInsert bulkInsert = databaseHelper.beginBulkInsert(changes);
+                try {
+                    for (int i = 0; i < size; i++) {
+                        Expense expense = batch[i];
+                        if (duplicateFilter.isDuplicate(expense.getEpochDay(), expense.getAmountCents(),
+                                expense.getDescription())) {
+                            duplicates++;
+                        } else {
+                            bulkInsert.add(expense);
+                        }
+                    }
+                    bulkInsert.commit();
+                } finally {
+                    bulkInsert.close();
+                }
+                imported += bulkInsert.getCount();
+
+                if (listener != null) {
+                    listener.onProgress(new Result(rowsRead, imported, duplicates, rejected, elapsedMillis(start)));
+                }
+            }
+        } finally {
+            databaseHelper.publishChanges(changes);
+            reader.close();
+        }
+        return new Result(rowsRead, imported, duplicates, rejected, elapsedMillis(start));
+    }
+
+    private static void loadStored(DatabaseHelper databaseHelper, int userId, int fromDay, int toDay,
+                                   final int maxStoredId, final DuplicateFilter duplicateFilter) {
+        duplicateFilter.beginBatch(fromDay, toDay);
+        // Statements come in date order, so this is usually a short range of the day index
+        databaseHelper.forEachExpense(userId, fromDay, toDay, DatabaseHelper.ITERATE_REUSE_ROW,
+                new DatabaseHelper.ExpenseConsumer() {
+                    @Override
+                    public boolean accept(Expense expense) {
+                        if (expense.getId() <= maxStoredId) {
+                            duplicateFilter.addStored(expense.getEpochDay(), expense.getAmountCents(),
+                                    expense.getDescription());
+                        }
+                        return true;
+                    }
+                });
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // Picks OFX or CSV from the start of the file, unwrapping gzip as this app's export writes it
+    static StatementReader open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == 0x1f && buffered.read() == 0x8b;
+        buffered.reset();
+        InputStream stream = gzip ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            reader.mark(SNIFF_LENGTH);
+            char[] head = new char[SNIFF_LENGTH];
+            int length = 0;
+            int read;
+            while (length < head.length && (read = reader.read(head, length, head.length - length)) > 0) {
+                length += read;
+            }
+            reader.reset();
+            // Spreadsheet apps often start UTF-8 files with a byte order mark
+            if (length > 0 && head[0] == '\uFEFF') {
+                reader.skip(1);
+            }
+
+            String start = new String(head, 0, length).toUpperCase(Locale.US);
+            if (start.contains("OFXHEADER") || start.contains("<OFX>")) {
+                return new OfxStatementReader(reader);
+            }
+            return new CsvStatementReader(reader);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+}
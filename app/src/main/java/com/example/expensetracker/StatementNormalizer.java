@@ -0,0 +1,257 @@
+package com.example.expensetracker;
+
+// Turns a statement record into an Expense: amounts into signed cents, negative for money
+// going out as Expense stores them, and the many date spellings banks use into epoch days.
+// Works on the characters directly, with no per-row formatter or BigDecimal.
+final class StatementNormalizer {
+    private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun",
+            "jul", "aug", "sep", "oct", "nov", "dec"};
+
+    // Amounts with more whole digits than this are rejected rather than overflowing
+    private static final int MAX_WHOLE_DIGITS = 15;
+
+    // How to read dates such as 03/04/2024 where either number could be the month
+    private final boolean dayFirst;
+
+    StatementNormalizer(boolean dayFirst) {
+        this.dayFirst = dayFirst;
+    }
+
+    // False when the record has no usable date or amount, or moves no money
+    boolean normalize(StatementRecord record, int userId, Expense expense) {
+        int epochDay = parseDate(record.date, dayFirst);
+        if (epochDay == EpochDay.UNKNOWN) {
+            return false;
+        }
+
+        long cents;
+        try {
+            if (!isBlank(record.amount)) {
+                cents = parseAmount(record.amount);
+            } else if (!isBlank(record.debit) || !isBlank(record.credit)) {
+                // Separate columns usually both hold positive numbers
+                long debit = isBlank(record.debit) ? 0 : Math.abs(parseAmount(record.debit));
+                long credit = isBlank(record.credit) ? 0 : Math.abs(parseAmount(record.credit));
+                cents = credit - debit;
+            } else {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (cents == 0) {
+            return false;
+        }
+
+        // The Expense may be reused from the previous row, so every field is set
+        expense.setId(0);
+        expense.setUserId(userId);
+        expense.setAmountCents(cents);
+        expense.setCategoryId(0);
+        // BulkInsert files a category the app doesn't have under "Other" rather than adding it
+        expense.setCategory(cleanText(record.category));
+        expense.setDescription(cleanText(record.description));
+        expense.setDate(EpochDay.toIsoDate(epochDay));
+        expense.setEpochDay(epochDay);
+        return true;
+    }
+
+    // Amounts such as "-1,234.56", "$12.00", "(12.00)", "12.00-", "12.00 DR" or "1.234,56".
+    // The last '.' or ',' is the decimal point unless it can only be a thousands separator.
+    static long parseAmount(String text) {
+        int decimal = decimalSeparator(text);
+        boolean negative = false;
+        boolean seenDigit = false;
+        long whole = 0;
+        int wholeDigits = 0;
+        int fraction = 0;
+        int fractionDigits = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int digit = Character.digit(c, 10);
+            if (digit >= 0) {
+                seenDigit = true;
+                if (decimal >= 0 && i > decimal) {
+                    // A third digit is only kept for rounding
+                    if (fractionDigits < 3) {
+                        fraction = fraction * 10 + digit;
+                        fractionDigits++;
+                    }
+                } else if (whole > 0 || digit > 0) {
+                    if (++wholeDigits > MAX_WHOLE_DIGITS) {
+                        throw new NumberFormatException("Amount out of range: " + text);
+                    }
+                    whole = whole * 10 + digit;
+                }
+            } else if (c == '-' || c == '\u2212' || c == '(') {
+                negative = true;
+            }
+            // Currency symbols, codes, spaces and thousands separators are skipped
+        }
+        if (!seenDigit) {
+            throw new NumberFormatException("No amount in: " + text);
+        }
+        String trimmed = text.trim();
+        if (trimmed.regionMatches(true, trimmed.length() - 2, "DR", 0, 2)) {
+            negative = true;
+        }
+
+        long cents = whole * Money.CENTS_PER_UNIT;
+        if (fractionDigits == 1) {
+            cents += fraction * 10;
+        } else if (fractionDigits == 2) {
+            cents += fraction;
+        } else if (fractionDigits == 3) {
+            cents += (fraction + 5) / 10;
+        }
+        return negative ? -cents : cents;
+    }
+
+    // Index of the decimal point in an amount, or -1 when it is a whole number
+    private static int decimalSeparator(String text) {
+        int lastDot = text.lastIndexOf('.');
+        int lastComma = text.lastIndexOf(',');
+        if (lastDot >= 0 && lastComma >= 0) {
+            return Math.max(lastDot, lastComma);
+        }
+        if (lastDot >= 0) {
+            // 1.234.567 groups thousands; a single dot is a decimal point
+            return text.indexOf('.') == lastDot ? lastDot : -1;
+        }
+        if (lastComma >= 0 && text.indexOf(',') == lastComma) {
+            // 12,5 and 12,50 are decimal commas; 1,234 groups thousands
+            int digits = 0;
+            for (int i = lastComma + 1; i < text.length() && Character.digit(text.charAt(i), 10) >= 0; i++) {
+                digits++;
+            }
+            return digits == 1 || digits == 2 ? lastComma : -1;
+        }
+        return -1;
+    }
+
+    // Dates such as 2024-03-05, 20240305 (OFX, with any time after it), 03/05/2024, 5.3.24,
+    // 05 Mar 2024 or Mar 5, 2024. UNKNOWN when none of them fit.
+    static int parseDate(String text, boolean dayFirst) {
+        if (text == null) {
+            return EpochDay.UNKNOWN;
+        }
+        String date = text.trim();
+
+        // yyyyMMdd, possibly followed by a time and zone as in OFX
+        int leadingDigits = 0;
+        while (leadingDigits < date.length() && Character.digit(date.charAt(leadingDigits), 10) >= 0) {
+            leadingDigits++;
+        }
+        if (leadingDigits >= 8) {
+            return EpochDay.fromCivilChecked(digits(date, 0, 4), digits(date, 4, 6), digits(date, 6, 8));
+        }
+
+        // Up to three numbers and a month name; weekday names and times are ignored
+        int[] numbers = new int[3];
+        int[] lengths = new int[3];
+        int count = 0;
+        int month = 0;
+        int i = 0;
+        while (i < date.length() && count < 3) {
+            char c = date.charAt(i);
+            int start = i;
+            if (Character.digit(c, 10) >= 0) {
+                while (i < date.length() && Character.digit(date.charAt(i), 10) >= 0) {
+                    i++;
+                }
+                if (i - start > 4) {
+                    return EpochDay.UNKNOWN;
+                }
+                numbers[count] = digits(date, start, i);
+                lengths[count++] = i - start;
+            } else if (Character.isLetter(c)) {
+                while (i < date.length() && Character.isLetter(date.charAt(i))) {
+                    i++;
+                }
+                if (month == 0 && i - start >= 3) {
+                    month = monthNumber(date, start);
+                }
+            } else {
+                i++;
+            }
+        }
+
+        int year;
+        int day;
+        if (month != 0) {
+            if (count < 2) {
+                return EpochDay.UNKNOWN;
+            }
+            // The four-digit number is the year; otherwise the year comes last
+            boolean yearFirst = lengths[0] == 4;
+            year = fullYear(yearFirst ? numbers[0] : numbers[1], yearFirst ? lengths[0] : lengths[1]);
+            day = yearFirst ? numbers[1] : numbers[0];
+        } else {
+            if (count < 3) {
+                return EpochDay.UNKNOWN;
+            }
+            if (lengths[0] == 4) {
+                return EpochDay.fromCivilChecked(numbers[0], numbers[1], numbers[2]);
+            }
+            year = fullYear(numbers[2], lengths[2]);
+            // A number over 12 can only be the day, whatever the preferred order
+            boolean firstIsDay = numbers[0] > 12 || (numbers[1] <= 12 && dayFirst);
+            day = firstIsDay ? numbers[0] : numbers[1];
+            month = firstIsDay ? numbers[1] : numbers[0];
+        }
+        return EpochDay.fromCivilChecked(year, month, day);
+    }
+
+    // Trimmed with inner runs of whitespace collapsed; null when nothing is left
+    static String cleanText(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder clean = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = clean.length() > 0;
+            } else {
+                if (space) {
+                    clean.append(' ');
+                    space = false;
+                }
+                clean.append(c);
+            }
+        }
+        return clean.length() == 0 ? null : clean.toString();
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + Character.digit(text.charAt(i), 10);
+        }
+        return value;
+    }
+
+    private static int fullYear(int year, int length) {
+        if (length > 2) {
+            return year;
+        }
+        // Two-digit years: 70-99 are the 1900s, the rest this century
+        return year + (year < 70 ? 2000 : 1900);
+    }
+
+    // 1-12 for an English month name or abbreviation starting at start, else 0
+    private static int monthNumber(String text, int start) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (text.regionMatches(true, start, MONTHS[i], 0, 3)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.expensetracker;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Streams the transactions out of a statement file one at a time
+interface StatementReader extends Closeable {
+    // Fills record with the next transaction; false at the end of the file
+    boolean next(StatementRecord record) throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.example.expensetracker;
+
+// One statement transaction as the file spells it, before normalization. Readers fill the
+// same instance for every row; fields the format doesn't have stay null.
+final class StatementRecord {
+    String date;
+    // Signed amount, or separate money-out and money-in columns
+    String amount;
+    String debit;
+    String credit;
+    String description;
+    String category;
+
+    void clear() {
+        date = null;
+        amount = null;
+        debit = null;
+        credit = null;
+        description = null;
+        category = null;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.expensetracker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Immutable, column-oriented copy of one user's transactions, sorted by epoch day, oldest
+// first. Each column is a primitive array indexed by row, so a scan touches a few contiguous
+// arrays instead of a million Expense objects. Categories and descriptions are stored once
+// in snapshot-local pools and referenced by index.
+public class TransactionSnapshot {
+    public static final int NO_DESCRIPTION = -1;
+
+    // Below this many rows a single thread is faster than splitting the work; also the
+    // smallest range a parallel summary hands to one task
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final int userId;
+    private final int size;
+    private final long[] amountsCents;
+    private final int[] epochDays;
+    private final short[] categoryIds;
+    private final int[] descriptionIds;
+    private final String[] categoryNames;
+    private final String[] descriptionPool;
+
+    private TransactionSnapshot(Builder builder) {
+        this.userId = builder.userId;
+        this.size = builder.size;
+        this.amountsCents = Arrays.copyOf(builder.amountsCents, size);
+        this.epochDays = Arrays.copyOf(builder.epochDays, size);
+        this.categoryIds = Arrays.copyOf(builder.categoryIds, size);
+        this.descriptionIds = Arrays.copyOf(builder.descriptionIds, size);
+        this.categoryNames = builder.categoryNames.toArray(new String[0]);
+        this.descriptionPool = builder.descriptions.toArray(new String[0]);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Signed amount in cents: positive is income, negative is an expense
+    public long getAmountCents(int row) {
+        return amountsCents[row];
+    }
+
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    public int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+
+    public int getCategoryCount() {
+        return categoryNames.length;
+    }
+
+    // Category ids are only meaningful within this snapshot
+    public String getCategoryName(int categoryId) {
+        return categoryNames[categoryId];
+    }
+
+    public String getDescription(int row) {
+        int id = descriptionIds[row];
+        return id == NO_DESCRIPTION ? null : descriptionPool[id];
+    }
+
+    public boolean isIncome(int row) {
+        return amountsCents[row] > 0;
+    }
+
+    // Totals, counts, extremes and per-category totals in one pass over the primitive columns.
+    // Large histories are split into row ranges summed on the common fork/join pool; the
+    // partial results merge exactly, so the summary is the same as a sequential pass.
+    public ExpenseSummary summarize() {
+        return summarize(ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+    }
+
+    // The same statistics for rows dated [fromDay, toDay]. Rows are sorted by day, so the
+    // range is found by binary search and only the rows inside it are read.
+    public ExpenseSummary summarize(int fromDay, int toDay) {
+        return summarizeRows(firstRowOnOrAfter(fromDay), firstRowAfter(toDay),
+                ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+    }
+
+    ExpenseSummary summarize(ForkJoinPool pool, int threshold) {
+        return summarizeRows(0, size, pool, threshold);
+    }
+
+    private ExpenseSummary summarizeRows(int fromRow, int toRow, ForkJoinPool pool, int threshold) {
+        if (toRow - fromRow < threshold * 2 || pool.getParallelism() < 2) {
+            return aggregate(fromRow, toRow).toSummary(categoryNames);
+        }
+        return pool.invoke(new AggregateTask(fromRow, toRow, threshold)).toSummary(categoryNames);
+    }
+
+    // Number of rows dated [fromDay, toDay]
+    public int countRows(int fromDay, int toDay) {
+        return Math.max(0, firstRowAfter(toDay) - firstRowOnOrAfter(fromDay));
+    }
+
+    // Index of the first row dated on or after epochDay, or size if there is none
+    int firstRowOnOrAfter(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    int firstRowAfter(int epochDay) {
+        return epochDay == Integer.MAX_VALUE ? size : firstRowOnOrAfter(epochDay + 1);
+    }
+
+    // Partial statistics for rows [fromRow, toRow), to be merged with other ranges
+    public ReportAggregator aggregate(int fromRow, int toRow) {
+        ReportAggregator aggregator = new ReportAggregator(categoryNames.length);
+        aggregator.addRows(amountsCents, categoryIds, fromRow, toRow);
+        return aggregator;
+    }
+
+    // Category names indexed by the snapshot-local category id
+    public String[] getCategoryNames() {
+        return categoryNames.clone();
+    }
+
+    // Halves its row range until it is below the threshold, then merges the halves' results
+    private final class AggregateTask extends RecursiveTask<ReportAggregator> {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromRow;
+        private final int toRow;
+        private final int threshold;
+
+        AggregateTask(int fromRow, int toRow, int threshold) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected ReportAggregator compute() {
+            if (toRow - fromRow <= threshold) {
+                return aggregate(fromRow, toRow);
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            AggregateTask right = new AggregateTask(middle, toRow, threshold);
+            right.fork();
+            ReportAggregator left = new AggregateTask(fromRow, middle, threshold).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    // Appends rows in order, growing the columns as needed, then trims them in build()
+    public static class Builder {
+        private final int userId;
+        private int size;
+        private long[] amountsCents;
+        private int[] epochDays;
+        private short[] categoryIds;
+        private int[] descriptionIds;
+        private final java.util.List<String> categoryNames = new java.util.ArrayList<>();
+        private final Map<String, Integer> categoryIndex = new HashMap<>();
+        private final java.util.List<String> descriptions = new java.util.ArrayList<>();
+        private final Map<String, Integer> descriptionIndex = new HashMap<>();
+
+        public Builder(int userId, int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            this.userId = userId;
+            this.amountsCents = new long[capacity];
+            this.epochDays = new int[capacity];
+            this.categoryIds = new short[capacity];
+            this.descriptionIds = new int[capacity];
+        }
+
+        public Builder add(long amountCents, int epochDay, String category, String description) {
+            if (size == amountsCents.length) {
+                int capacity = size + (size >> 1);
+                amountsCents = Arrays.copyOf(amountsCents, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                categoryIds = Arrays.copyOf(categoryIds, capacity);
+                descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+            }
+            amountsCents[size] = amountCents;
+            epochDays[size] = epochDay;
+            categoryIds[size] = categoryId(category == null ? "" : category);
+            descriptionIds[size] = description == null ? NO_DESCRIPTION : descriptionId(description);
+            size++;
+            return this;
+        }
+
+        public TransactionSnapshot build() {
+            return new TransactionSnapshot(this);
+        }
+
+        private short categoryId(String category) {
+            Integer id = categoryIndex.get(category);
+            if (id == null) {
+                if (categoryNames.size() > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many categories for a snapshot");
+                }
+                id = categoryNames.size();
+                categoryNames.add(category);
+                categoryIndex.put(category, id);
+            }
+            return (short) (int) id;
+        }
+
+        private int descriptionId(String description) {
+            Integer id = descriptionIndex.get(description);
+            if (id == null) {
+                id = descriptions.size();
+                descriptions.add(description);
+                descriptionIndex.put(description, id);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.expensetracker;
+
+// Spending per day, week (from Monday) or calendar month over part of a snapshot, oldest
+// first. Empty buckets are included so the x axis stays continuous.
+public class TrendSeries {
+    public static final int DAILY = 0;
+    public static final int WEEKLY = 1;
+    public static final int MONTHLY = 2;
+
+    public static final String[] LABELS = {"Daily", "Weekly", "Monthly"};
+
+    private final int bucket;
+    private final int[] startDays;
+    private final long[] expenseCents;
+
+    private TrendSeries(int bucket, int[] startDays, long[] expenseCents) {
+        this.bucket = bucket;
+        this.startDays = startDays;
+        this.expenseCents = expenseCents;
+    }
+
+    // Buckets the snapshot's expenses dated [fromDay, toDay], trimmed to the days that have
+    // rows so an all-time range starts at the first transaction. Rows without a known date sort
+    // before every real day and are skipped.
+    public static TrendSeries fromSnapshot(TransactionSnapshot snapshot, int fromDay, int toDay, int bucket) {
+        int fromRow = snapshot.firstRowOnOrAfter(Math.max(fromDay, EpochDay.UNKNOWN + 1));
+        int toRow = snapshot.firstRowAfter(toDay);
+        if (fromRow >= toRow) {
+            return new TrendSeries(bucket, new int[0], new long[0]);
+        }
+
+        int firstStart = bucketStart(snapshot.getEpochDay(fromRow), bucket);
+        int count = bucketIndex(firstStart, snapshot.getEpochDay(toRow - 1), bucket) + 1;
+        int[] startDays = new int[count];
+        long[] expenseCents = new long[count];
+
+        int start = firstStart;
+        for (int i = 0; i < count; i++) {
+            startDays[i] = start;
+            start = nextBucketStart(start, bucket);
+        }
+        for (int row = fromRow; row < toRow; row++) {
+            long amount = snapshot.getAmountCents(row);
+            if (amount <= 0) {
+                expenseCents[bucketIndex(firstStart, snapshot.getEpochDay(row), bucket)] -= amount;
+            }
+        }
+        return new TrendSeries(bucket, startDays, expenseCents);
+    }
+
+    // At most maxPoints buckets, chosen by largest-triangle-three-buckets
+    public TrendSeries downsample(int maxPoints) {
+        if (startDays.length <= maxPoints) {
+            return this;
+        }
+        int[] kept = Lttb.select(startDays, expenseCents, startDays.length, maxPoints);
+        int[] keptDays = new int[kept.length];
+        long[] keptCents = new long[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            keptDays[i] = startDays[kept[i]];
+            keptCents[i] = expenseCents[kept[i]];
+        }
+        return new TrendSeries(bucket, keptDays, keptCents);
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    public int size() {
+        return startDays.length;
+    }
+
+    public boolean isEmpty() {
+        return startDays.length == 0;
+    }
+
+    // Epoch day the bucket starts on
+    public int getStartDay(int index) {
+        return startDays[index];
+    }
+
+    // Total spent in the bucket, as a positive amount
+    public long getExpenseCents(int index) {
+        return expenseCents[index];
+    }
+
+    static int bucketStart(int epochDay, int bucket) {
+        switch (bucket) {
+            case DAILY:
+                return epochDay;
+            case WEEKLY:
+                // 1970-01-01 was a Thursday, three days after a Monday
+                return epochDay - Math.floorMod(epochDay + 3, 7);
+            case MONTHLY:
+                return EpochDay.startOfMonth(epochDay);
+            default:
+                throw new IllegalArgumentException("Unknown bucket " + bucket);
+        }
+    }
+
+    private static int nextBucketStart(int start, int bucket) {
+        switch (bucket) {
+            case DAILY:
+                return start + 1;
+            case WEEKLY:
+                return start + 7;
+            default:
+                // Months are at most 31 days long, so this lands in the following month
+                return EpochDay.startOfMonth(start + 31);
+        }
+    }
+
+    private static int bucketIndex(int firstStart, int epochDay, int bucket) {
+        switch (bucket) {
+            case DAILY:
+                return epochDay - firstStart;
+            case WEEKLY:
+                return (bucketStart(epochDay, WEEKLY) - firstStart) / 7;
+            default:
+                return monthNumber(epochDay) - monthNumber(firstStart);
+        }
+    }
+
+    private static int monthNumber(int epochDay) {
+        int monthKey = EpochDay.toMonthKey(epochDay);
+        return monthKey / 100 * 12 + monthKey % 100;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.expensetracker;
+
+public class UserTotals {
+    private final long totalIncomeCents;
+    private final long totalExpenseCents;
+    private final int incomeCount;
+    private final int expenseCount;
+
+    public UserTotals(long totalIncomeCents, long totalExpenseCents, int incomeCount, int expenseCount) {
+        this.totalIncomeCents = totalIncomeCents;
+        this.totalExpenseCents = totalExpenseCents;
+        this.incomeCount = incomeCount;
+        this.expenseCount = expenseCount;
+    }
+
+    public long getTotalIncomeCents() {
+        return totalIncomeCents;
+    }
+
+    public long getTotalExpenseCents() {
+        return totalExpenseCents;
+    }
+
+    public long getBalanceCents() {
+        return totalIncomeCents - totalExpenseCents;
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getExpenseCount() {
+        return expenseCount;
+    }
+
+    public int getTransactionCount() {
+        return incomeCount + expenseCount;
+    }
+
+    // True when these totals agree with an aggregate computed from the raw rows
+    public boolean matches(ExpenseSummary summary) {
+        return incomeCount == summary.getIncomeCount()
+                && expenseCount == summary.getExpenseCount()
+                && totalIncomeCents == summary.getTotalIncomeCents()
+                && totalExpenseCents == summary.getTotalExpenseCents();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CategoryTotalsTest {
+    private static CategoryTotals totals(long... cents) {
+        CategoryTotals totals = new CategoryTotals();
+        for (int i = 0; i < cents.length; i++) {
+            totals.add("Category " + i, cents[i]);
+        }
+        return totals;
+    }
+
+    private static long sum(CategoryTotals totals) {
+        long sum = 0;
+        for (int i = 0; i < totals.size(); i++) {
+            sum += totals.getTotalCents(i);
+        }
+        return sum;
+    }
+
+    @Test
+    public void collapseTail_foldsSmallAndExtraCategoriesIntoOther() {
+        CategoryTotals totals = totals(50000, 30000, 10000, 5000, 3000, 1000, 500, 300, 200);
+
+        CategoryTotals collapsed = totals.collapseTail(5, 0.02, "Other");
+        assertEquals(5, collapsed.size());
+        assertEquals("Category 3", collapsed.getName(3));
+        assertEquals("Other", collapsed.getName(4));
+        assertEquals(5000, collapsed.getTotalCents(4));
+        assertEquals(sum(totals), sum(collapsed));
+
+        // Categories under 2% of the total go to Other even when there is room for them
+        CategoryTotals bySize = totals.collapseTail(20, 0.02, "Other");
+        assertEquals(6, bySize.size());
+        assertEquals(2000, bySize.getTotalCents(5));
+    }
+
+    @Test
+    public void collapseTail_keepsShortListsAsTheyAre() {
+        CategoryTotals collapsed = totals(400, 300, 200, 100).collapseTail(4, 0.02, "Other");
+        assertEquals(4, collapsed.size());
+        assertEquals("Category 3", collapsed.getName(3));
+    }
+
+    @Test
+    public void collapseTail_mergesAnExistingOtherCategory() {
+        CategoryTotals totals = new CategoryTotals();
+        totals.add("Food", 50000);
+        totals.add("Other", 20000);
+        totals.add("Rent", 10000);
+        totals.add("Fees", 100);
+
+        CategoryTotals collapsed = totals.collapseTail(3, 0.02, "Other");
+        assertEquals(3, collapsed.size());
+        assertEquals("Food", collapsed.getName(0));
+        assertEquals("Rent", collapsed.getName(1));
+        assertEquals("Other", collapsed.getName(2));
+        assertEquals(20100, collapsed.getTotalCents(2));
+        assertEquals(4, totals.size());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFilterTest {
+    @Test
+    public void storedRowsMatchOnceEach() {
+        DuplicateFilter filter = new DuplicateFilter();
+        filter.beginBatch(100, 110);
+        filter.addStored(105, -350, "Coffee  Shop");
+
+        // Case and spacing don't matter; the second identical coffee is new
+        assertTrue(filter.isDuplicate(105, -350, "COFFEE SHOP"));
+        assertFalse(filter.isDuplicate(105, -350, "Coffee Shop"));
+        assertFalse(filter.isDuplicate(106, -350, "Coffee Shop"));
+        assertFalse(filter.isDuplicate(105, -351, "Coffee Shop"));
+    }
+
+    @Test
+    public void dayAcrossBatchesIsNotMatchedTwice() {
+        DuplicateFilter filter = new DuplicateFilter();
+        filter.beginBatch(100, 105);
+        filter.addStored(105, -350, "Coffee");
+        assertTrue(filter.isDuplicate(105, -350, "Coffee"));
+
+        // The next batch starts on the same day and loads the same stored row again
+        filter.beginBatch(105, 110);
+        filter.addStored(105, -350, "Coffee");
+        assertFalse(filter.isDuplicate(105, -350, "Coffee"));
+    }
+
+    @Test
+    public void fingerprint_ignoresCaseAndSpacingOnly() {
+        long key = DuplicateFilter.fingerprint(19000, -1250, "Corner  Shop ");
+        assertEquals(key, DuplicateFilter.fingerprint(19000, -1250, " corner shop"));
+        assertFalse(key == DuplicateFilter.fingerprint(19000, -1250, "CornerShop"));
+        assertFalse(key == DuplicateFilter.fingerprint(19001, -1250, "Corner Shop"));
+        assertFalse(key == DuplicateFilter.fingerprint(19000, 1250, "Corner Shop"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpenseExporterTest {
+    private static Expense expense(int id, long cents, String category, String description, int epochDay) {
+        Expense expense = new Expense();
+        expense.setId(id);
+        expense.setAmountCents(cents);
+        expense.setCategory(category);
+        expense.setDescription(description);
+        expense.setEpochDay(epochDay);
+        return expense;
+    }
+
+    private static byte[] export(ExpenseExporter exporter, Expense... expenses) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.open(out);
+        for (Expense expense : expenses) {
+            exporter.write(expense);
+        }
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1024];
+        int read;
+        while ((read = reader.read(buffer)) > 0) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void csv_quotesOnlyWhenNeeded() throws IOException {
+        int day = EpochDay.fromCivil(2024, 3, 5);
+        byte[] bytes = export(new ExpenseExporter(ExpenseExporter.CSV, false),
+                expense(1, -1205, "Food", "Lunch, with \"Sam\"", day),
+                expense(2, 250000, "Salary", null, day),
+                expense(3, -5, "Fees", "line\nbreak", day));
+
+        assertEquals("id,date,amount,category,description\n" +
+                "1,2024-03-05,-12.05,Food,\"Lunch, with \"\"Sam\"\"\"\n" +
+                "2,2024-03-05,2500.00,Salary,\n" +
+                "3,2024-03-05,-0.05,Fees,\"line\nbreak\"\n", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void jsonLines_escapesStringsAndKeepsNulls() throws IOException {
+        Expense undated = expense(7, -99, "Caf\u00e9", "tab\there \\ \u0001", EpochDay.UNKNOWN);
+        undated.setDate("someday");
+        byte[] bytes = export(new ExpenseExporter(ExpenseExporter.JSON_LINES, false),
+                undated, expense(8, 100, "Gift", null, EpochDay.fromCivil(2023, 12, 31)));
+
+        assertEquals("{\"id\":7,\"date\":\"someday\",\"amount\":-0.99,\"category\":\"Caf\u00e9\"," +
+                "\"description\":\"tab\\there \\\\ \\u0001\"}\n" +
+                "{\"id\":8,\"date\":\"2023-12-31\",\"amount\":1.00,\"category\":\"Gift\",\"description\":null}\n",
+                new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void gzip_roundTripsToThePlainOutput() throws IOException {
+        Expense[] rows = new Expense[5000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = expense(i + 1, -(i * 37L), "Category " + (i % 9), "Row " + i, 19000 + i / 10);
+        }
+        String plain = new String(export(new ExpenseExporter(ExpenseExporter.CSV, false), rows), StandardCharsets.UTF_8);
+        byte[] compressed = export(new ExpenseExporter(ExpenseExporter.CSV, true), rows);
+
+        assertEquals(plain, gunzip(compressed));
+        assertEquals(rows.length + 1, plain.split("\n").length);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportAggregatorTest {
+    private static final String[] CATEGORIES = {"Food", "Transport", "Salary", "Rent", "Other"};
+
+    private static TransactionSnapshot randomSnapshot(int rows, long seed) {
+        Random random = new Random(seed);
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(1, rows);
+        for (int i = 0; i < rows; i++) {
+            long amount = random.nextInt(200000) - 150000;
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            builder.add(amount, 18000 + i / 10, category, null);
+        }
+        return builder.build();
+    }
+
+    // The separate loops ReportsActivity used to run, one statistic at a time
+    private static void assertMatchesMultiPass(TransactionSnapshot snapshot, ExpenseSummary summary) {
+        long income = 0;
+        long expense = 0;
+        int incomeCount = 0;
+        int expenseCount = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            long amount = snapshot.getAmountCents(row);
+            if (amount > 0) {
+                income += amount;
+                incomeCount++;
+            } else {
+                expense -= amount;
+                expenseCount++;
+            }
+        }
+
+        long highestIncome = 0;
+        long highestExpense = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            long amount = snapshot.getAmountCents(row);
+            highestIncome = Math.max(highestIncome, amount);
+            highestExpense = Math.max(highestExpense, -amount);
+        }
+
+        Map<String, Long> incomeByCategory = new HashMap<>();
+        Map<String, Long> expenseByCategory = new HashMap<>();
+        for (int row = 0; row < snapshot.size(); row++) {
+            long amount = snapshot.getAmountCents(row);
+            String category = snapshot.getCategoryName(snapshot.getCategoryId(row));
+            Map<String, Long> totals = amount > 0 ? incomeByCategory : expenseByCategory;
+            Long total = totals.get(category);
+            totals.put(category, (total == null ? 0 : total) + Math.abs(amount));
+        }
+
+        assertEquals(income, summary.getTotalIncomeCents());
+        assertEquals(expense, summary.getTotalExpenseCents());
+        assertEquals(incomeCount, summary.getIncomeCount());
+        assertEquals(expenseCount, summary.getExpenseCount());
+        assertEquals(highestIncome, summary.getHighestIncomeCents());
+        assertEquals(highestExpense, summary.getHighestExpenseCents());
+        assertCategoryTotals(incomeByCategory, summary.getIncomeByCategory());
+        assertCategoryTotals(expenseByCategory, summary.getExpenseByCategory());
+    }
+
+    private static void assertCategoryTotals(Map<String, Long> expected, CategoryTotals actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals((long) expected.get(actual.getName(i)), actual.getTotalCents(i));
+            if (i > 0) {
+                // Largest category first
+                assertEquals(true, actual.getTotalCents(i - 1) >= actual.getTotalCents(i));
+            }
+        }
+    }
+
+    private static void assertSameSummary(ExpenseSummary expected, ExpenseSummary actual) {
+        assertEquals(expected.getTotalIncomeCents(), actual.getTotalIncomeCents());
+        assertEquals(expected.getTotalExpenseCents(), actual.getTotalExpenseCents());
+        assertEquals(expected.getIncomeCount(), actual.getIncomeCount());
+        assertEquals(expected.getExpenseCount(), actual.getExpenseCount());
+        assertEquals(expected.getHighestIncomeCents(), actual.getHighestIncomeCents());
+        assertEquals(expected.getHighestExpenseCents(), actual.getHighestExpenseCents());
+        assertSameTotals(expected.getIncomeByCategory(), actual.getIncomeByCategory());
+        assertSameTotals(expected.getExpenseByCategory(), actual.getExpenseByCategory());
+    }
+
+    private static void assertSameTotals(CategoryTotals expected, CategoryTotals actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getName(i), actual.getName(i));
+            assertEquals(expected.getTotalCents(i), actual.getTotalCents(i));
+        }
+    }
+
+    @Test
+    public void summarize_matchesSeparatePasses() {
+        TransactionSnapshot snapshot = randomSnapshot(10000, 42);
+        assertMatchesMultiPass(snapshot, snapshot.summarize());
+    }
+
+    @Test
+    public void merge_ofChunksMatchesSinglePass() {
+        TransactionSnapshot snapshot = randomSnapshot(10000, 7);
+        ExpenseSummary expected = snapshot.summarize();
+
+        ReportAggregator merged = snapshot.aggregate(0, 1234)
+                .merge(snapshot.aggregate(1234, 5000))
+                .merge(snapshot.aggregate(5000, snapshot.size()));
+        assertSameSummary(expected, merged.toSummary(snapshot.getCategoryNames()));
+
+        // Merging in the other order gives the same result
+        ReportAggregator reversed = snapshot.aggregate(5000, snapshot.size())
+                .merge(snapshot.aggregate(0, 1234).merge(snapshot.aggregate(1234, 5000)));
+        assertSameSummary(expected, reversed.toSummary(snapshot.getCategoryNames()));
+    }
+
+    @Test
+    public void summarize_parallelMatchesSequential() {
+        TransactionSnapshot snapshot = randomSnapshot(300000, 11);
+        ExpenseSummary sequential = snapshot.aggregate(0, snapshot.size()).toSummary(snapshot.getCategoryNames());
+
+        // Different pool sizes and split points must not change a single total or the category order
+        int[] parallelisms = {2, 3, 8};
+        int[] thresholds = {1000, 4096, 50000};
+        for (int parallelism : parallelisms) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int threshold : thresholds) {
+                    for (int run = 0; run < 3; run++) {
+                        assertSameSummary(sequential, snapshot.summarize(pool, threshold));
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        assertSameSummary(sequential, snapshot.summarize());
+    }
+
+    @Test
+    public void summarize_dayRangeMatchesFilteredRows() {
+        TransactionSnapshot snapshot = randomSnapshot(5000, 3);
+        int fromDay = 18100;
+        int toDay = 18250;
+
+        ReportAggregator filtered = new ReportAggregator(snapshot.getCategoryCount());
+        int rows = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (snapshot.getEpochDay(row) >= fromDay && snapshot.getEpochDay(row) <= toDay) {
+                filtered.add(snapshot.getAmountCents(row), snapshot.getCategoryId(row));
+                rows++;
+            }
+        }
+
+        assertEquals(rows, snapshot.countRows(fromDay, toDay));
+        assertSameSummary(filtered.toSummary(snapshot.getCategoryNames()), snapshot.summarize(fromDay, toDay));
+        assertSameSummary(snapshot.summarize(), snapshot.summarize(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(0, snapshot.summarize(30000, 30010).getTransactionCount());
+    }
+
+    @Test
+    public void add_growsForUnseenCategories() {
+        ReportAggregator aggregator = new ReportAggregator(0);
+        aggregator.add(5000, 2);
+        aggregator.add(-1250, 0);
+        aggregator.add(-250, 0);
+
+        ExpenseSummary summary = aggregator.toSummary(new String[]{"Food", "Unused", "Salary"});
+        assertEquals(5000, summary.getTotalIncomeCents());
+        assertEquals(1500, summary.getTotalExpenseCents());
+        assertEquals(1250, summary.getHighestExpenseCents());
+        assertEquals("Salary", summary.getIncomeByCategory().getName(0));
+        assertEquals(1, summary.getExpenseByCategory().size());
+    }
+
+    @Test
+    public void summarize_emptySnapshot() {
+        ExpenseSummary summary = new TransactionSnapshot.Builder(1, 0).build().summarize();
+        assertEquals(0, summary.getTransactionCount());
+        assertEquals(0, summary.getHighestExpenseCents());
+        assertEquals(true, summary.getIncomeByCategory().isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatementNormalizerTest {
+    @Test
+    public void parseAmount_handlesBankSpellings() {
+        assertEquals(-123456, StatementNormalizer.parseAmount("-1,234.56"));
+        assertEquals(1200, StatementNormalizer.parseAmount("$12.00"));
+        assertEquals(-1200, StatementNormalizer.parseAmount("(12.00)"));
+        assertEquals(-1200, StatementNormalizer.parseAmount("12.00-"));
+        assertEquals(-1200, StatementNormalizer.parseAmount("12.00 DR"));
+        assertEquals(1200, StatementNormalizer.parseAmount("12.00 CR"));
+        assertEquals(123456, StatementNormalizer.parseAmount("1.234,56"));
+        assertEquals(-1250, StatementNormalizer.parseAmount("-12,5"));
+        assertEquals(123400, StatementNormalizer.parseAmount("1,234"));
+        assertEquals(-99, StatementNormalizer.parseAmount("\u22120.99"));
+        assertEquals(1235, StatementNormalizer.parseAmount("12.345"));
+        assertEquals(250000, StatementNormalizer.parseAmount("USD 2 500.00"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseAmount_rejectsText() {
+        StatementNormalizer.parseAmount("n/a");
+    }
+
+    @Test
+    public void parseDate_readsCommonFormats() {
+        int march5 = EpochDay.fromCivil(2024, 3, 5);
+        assertEquals(march5, StatementNormalizer.parseDate("2024-03-05", false));
+        assertEquals(march5, StatementNormalizer.parseDate("2024/03/05 10:22:00", false));
+        assertEquals(march5, StatementNormalizer.parseDate("20240305120000.000[-5:EST]", false));
+        assertEquals(march5, StatementNormalizer.parseDate("03/05/2024", false));
+        assertEquals(march5, StatementNormalizer.parseDate("05/03/2024", true));
+        assertEquals(march5, StatementNormalizer.parseDate("5.3.24", true));
+        assertEquals(march5, StatementNormalizer.parseDate("05 Mar 2024", false));
+        assertEquals(march5, StatementNormalizer.parseDate("Tue, March 5, 2024", false));
+        assertEquals(march5, StatementNormalizer.parseDate("05-MAR-24", false));
+        // 31 can only be the day, whichever order is preferred
+        assertEquals(EpochDay.fromCivil(2024, 3, 31), StatementNormalizer.parseDate("03/31/2024", true));
+
+        assertEquals(EpochDay.UNKNOWN, StatementNormalizer.parseDate("2024-02-30", false));
+        assertEquals(EpochDay.UNKNOWN, StatementNormalizer.parseDate("pending", false));
+        assertEquals(EpochDay.UNKNOWN, StatementNormalizer.parseDate(null, false));
+    }
+
+    @Test
+    public void normalize_signsDebitsAndCreditsAndCleansText() {
+        StatementNormalizer normalizer = new StatementNormalizer(false);
+        StatementRecord record = new StatementRecord();
+        Expense expense = new Expense();
+        expense.setCategoryId(42);
+
+        record.date = "03/05/2024";
+        record.debit = "12.50";
+        record.description = "  COFFEE   SHOP\t#12 ";
+        assertTrue(normalizer.normalize(record, 7, expense));
+        assertEquals(-1250, expense.getAmountCents());
+        assertEquals("COFFEE SHOP #12", expense.getDescription());
+        assertEquals("2024-03-05", expense.getDate());
+        assertEquals(7, expense.getUserId());
+        // Left for BulkInsert to resolve from the (missing) category name
+        assertEquals(0, expense.getCategoryId());
+        assertNull(expense.getCategory());
+
+        record.clear();
+        record.date = "2024-03-06";
+        record.credit = "1,500.00";
+        record.debit = "";
+        assertTrue(normalizer.normalize(record, 7, expense));
+        assertEquals(150000, expense.getAmountCents());
+        assertNull(expense.getDescription());
+
+        record.clear();
+        record.date = "2024-03-06";
+        record.amount = "0.00";
+        assertFalse(normalizer.normalize(record, 7, expense));
+
+        record.amount = "-5.00";
+        record.date = "Opening balance";
+        assertFalse(normalizer.normalize(record, 7, expense));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatementReaderTest {
+    @Test
+    public void csv_findsHeaderBelowPreambleAndParsesQuotes() throws IOException {
+        String csv = "Account,12345678\n" +
+                "Statement period,Jan 2024\n" +
+                "\n" +
+                "Transaction Date,Description,Debit,Credit,Balance\r\n" +
+                "2024-01-02,\"Grocer, \"\"Main St\"\"\",45.10,,954.90\r\n" +
+                "2024-01-03,\"Refund\nline two\",,10.00,964.90\r\n" +
+                "\r\n";
+        CsvStatementReader reader = new CsvStatementReader(new StringReader(csv));
+        StatementRecord record = new StatementRecord();
+
+        assertTrue(reader.next(record));
+        assertEquals("2024-01-02", record.date);
+        assertEquals("Grocer, \"Main St\"", record.description);
+        assertEquals("45.10", record.debit);
+        assertEquals("", record.credit);
+        assertNull(record.amount);
+
+        assertTrue(reader.next(record));
+        assertEquals("Refund\nline two", record.description);
+        assertEquals("10.00", record.credit);
+
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    public void csv_readsSemicolonFilesAndThisAppsExport() throws IOException {
+        CsvStatementReader semicolons = new CsvStatementReader(new StringReader(
+                "Booking Date;Amount;Details\n05.03.2024;-12,50;Bakery\n"));
+        StatementRecord record = new StatementRecord();
+        assertTrue(semicolons.next(record));
+        assertEquals("-12,50", record.amount);
+        assertEquals("05.03.2024", record.date);
+
+        CsvStatementReader export = new CsvStatementReader(new StringReader(
+                "id,date,amount,category,description\n1,2024-03-05,-12.05,Food,Lunch\n"));
+        assertTrue(export.next(record));
+        assertEquals("-12.05", record.amount);
+        assertEquals("Food", record.category);
+        assertEquals("Lunch", record.description);
+    }
+
+    @Test(expected = IOException.class)
+    public void csv_withoutHeaderIsRejected() throws IOException {
+        new CsvStatementReader(new StringReader("a,b,c\n1,2,3\n"));
+    }
+
+    @Test
+    public void ofx_readsSgmlAndXmlTransactions() throws IOException {
+        String sgml = "OFXHEADER:100\nDATA:OFXSGML\n\n<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>\n" +
+                "<STMTTRN>\n<TRNTYPE>DEBIT\n<DTPOSTED>20240305120000[-5:EST]\n<TRNAMT>-42.10\n" +
+                "<FITID>1\n<NAME>HARDWARE &amp; CO\n<MEMO>Card 1234\n</STMTTRN>\n" +
+                "<STMTTRN>\n<TRNTYPE>CREDIT\n<DTPOSTED>20240306\n<TRNAMT>1500.00\n<MEMO>Payroll\n</STMTTRN>\n" +
+                "</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n";
+        OfxStatementReader reader = new OfxStatementReader(new StringReader(sgml));
+        StatementRecord record = new StatementRecord();
+
+        assertTrue(reader.next(record));
+        assertEquals("20240305120000[-5:EST]", record.date);
+        assertEquals("-42.10", record.amount);
+        assertEquals("HARDWARE & CO", record.description);
+
+        assertTrue(reader.next(record));
+        assertEquals("1500.00", record.amount);
+        // MEMO stands in when there is no NAME
+        assertEquals("Payroll", record.description);
+        assertFalse(reader.next(record));
+
+        String xml = "<?xml version=\"1.0\"?><OFX><STMTTRN><DTPOSTED>20240307</DTPOSTED>" +
+                "<TRNAMT>-3.50</TRNAMT><NAME>Bus</NAME></STMTTRN></OFX>";
+        reader = new OfxStatementReader(new StringReader(xml));
+        assertTrue(reader.next(record));
+        assertEquals("20240307", record.date);
+        assertEquals("Bus", record.description);
+        assertFalse(reader.next(record));
+    }
+}
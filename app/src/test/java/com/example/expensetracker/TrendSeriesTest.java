@@ -0,0 +1,117 @@
+package com.example.expensetracker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrendSeriesTest {
+    private static TransactionSnapshot randomSnapshot(int rows, int firstDay, int days, long seed) {
+        Random random = new Random(seed);
+        int[] epochDays = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            epochDays[i] = firstDay + random.nextInt(days);
+        }
+        Arrays.sort(epochDays);
+
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(1, rows);
+        for (int i = 0; i < rows; i++) {
+            builder.add(random.nextInt(100000) - 70000, epochDays[i], "Food", null);
+        }
+        return builder.build();
+    }
+
+    private static long totalSpent(TrendSeries series) {
+        long total = 0;
+        for (int i = 0; i < series.size(); i++) {
+            total += series.getExpenseCents(i);
+        }
+        return total;
+    }
+
+    @Test
+    public void buckets_addUpToTheRangeTotal() {
+        TransactionSnapshot snapshot = randomSnapshot(20000, 18000, 1500, 5);
+        long expected = snapshot.summarize(18200, 19000).getTotalExpenseCents();
+
+        int[] buckets = {TrendSeries.DAILY, TrendSeries.WEEKLY, TrendSeries.MONTHLY};
+        for (int bucket : buckets) {
+            TrendSeries series = TrendSeries.fromSnapshot(snapshot, 18200, 19000, bucket);
+            assertEquals(expected, totalSpent(series));
+            for (int i = 1; i < series.size(); i++) {
+                assertTrue(series.getStartDay(i) > series.getStartDay(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void buckets_startOnMondaysAndFirstOfMonth() {
+        TransactionSnapshot snapshot = randomSnapshot(500, 19000, 400, 9);
+
+        TrendSeries weekly = TrendSeries.fromSnapshot(snapshot, Integer.MIN_VALUE, Integer.MAX_VALUE, TrendSeries.WEEKLY);
+        // 2024-01-01 was a Monday
+        int monday = EpochDay.fromCivil(2024, 1, 1);
+        for (int i = 0; i < weekly.size(); i++) {
+            assertEquals(0, Math.floorMod(weekly.getStartDay(i) - monday, 7));
+        }
+
+        TrendSeries monthly = TrendSeries.fromSnapshot(snapshot, Integer.MIN_VALUE, Integer.MAX_VALUE, TrendSeries.MONTHLY);
+        for (int i = 0; i < monthly.size(); i++) {
+            assertTrue(EpochDay.toIsoDate(monthly.getStartDay(i)).endsWith("-01"));
+        }
+        assertEquals(EpochDay.startOfMonth(snapshot.getEpochDay(0)), monthly.getStartDay(0));
+    }
+
+    @Test
+    public void downsample_capsPointsAndKeepsEndsAndPeaks() {
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(1, 3000);
+        for (int day = 18000; day < 21000; day++) {
+            // A flat daily spend with one large purchase in the middle
+            builder.add(day == 19500 ? -500000 : -1000, day, "Food", null);
+        }
+        TrendSeries daily = TrendSeries.fromSnapshot(builder.build(), Integer.MIN_VALUE, Integer.MAX_VALUE,
+                TrendSeries.DAILY);
+        assertEquals(3000, daily.size());
+
+        TrendSeries downsampled = daily.downsample(200);
+        assertEquals(200, downsampled.size());
+        assertEquals(18000, downsampled.getStartDay(0));
+        assertEquals(20999, downsampled.getStartDay(199));
+        boolean keptPeak = false;
+        for (int i = 0; i < downsampled.size(); i++) {
+            keptPeak |= downsampled.getExpenseCents(i) == 500000;
+        }
+        assertTrue(keptPeak);
+
+        // Short series are returned as they are
+        assertEquals(3000, daily.downsample(5000).size());
+    }
+
+    @Test
+    public void fromSnapshot_skipsOnlyUndatedRows() {
+        int newYearsDay = EpochDay.fromIsoDate("1970-01-01");
+        assertEquals(0, newYearsDay);
+        assertEquals(197001, EpochDay.toMonthKey(newYearsDay));
+        assertEquals(EpochDay.UNKNOWN_MONTH, EpochDay.toMonthKey(EpochDay.UNKNOWN));
+
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(1, 4);
+        builder.add(-100, EpochDay.UNKNOWN, "Food", null);
+        builder.add(-200, EpochDay.fromCivil(1969, 12, 31), "Food", null);
+        builder.add(-400, newYearsDay, "Food", null);
+        builder.add(-800, newYearsDay + 1, "Food", null);
+        TrendSeries daily = TrendSeries.fromSnapshot(builder.build(), Integer.MIN_VALUE, Integer.MAX_VALUE,
+                TrendSeries.DAILY);
+        assertEquals(3, daily.size());
+        assertEquals(newYearsDay - 1, daily.getStartDay(0));
+        assertEquals(1400, totalSpent(daily));
+    }
+
+    @Test
+    public void fromSnapshot_emptyRange() {
+        TransactionSnapshot snapshot = randomSnapshot(100, 19000, 30, 1);
+        assertTrue(TrendSeries.fromSnapshot(snapshot, 20000, 20100, TrendSeries.DAILY).isEmpty());
+    }
+}